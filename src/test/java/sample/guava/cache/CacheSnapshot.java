@@ -0,0 +1,248 @@
+package sample.guava.cache;
+
+import com.google.common.base.Converter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Saves the keys, and optionally the values, of a cache to a file, so that a restarted process can warm its cache
+ * up front instead of sending every first request to the backend.
+ * <p>
+ * The file starts with a magic number followed by records of {@code [key length][key][value length][value]},
+ * a value length of -1 marks a record without value. Snapshots are appended to the file, a record read later wins
+ * over an earlier record of the same key, and a record cut short by a crash is ignored. Once the file grows beyond
+ * four times the size of the latest snapshot, or ends in such a record, it is rewritten with that snapshot only.
+ */
+public final class CacheSnapshot<K, V> {
+    private static final int MAGIC = 0x47534e50;
+    private static final int NO_VALUE = -1;
+    private static final int COMPACTION_FACTOR = 4;
+
+    private final Logger log = LogManager.getLogger(this.getClass().getName());
+    private final File file;
+    private final Converter<K, byte[]> keySerializer;
+    private final Converter<V, byte[]> valueSerializer;
+
+    private CacheSnapshot(File file, Converter<K, byte[]> keySerializer, Converter<V, byte[]> valueSerializer) {
+        this.file = checkNotNull(file, "file");
+        this.keySerializer = checkNotNull(keySerializer, "keySerializer");
+        this.valueSerializer = valueSerializer;
+    }
+
+    /**
+     * Snapshots keys only, restoring loads the values through the cache loader.
+     */
+    public static <K, V> CacheSnapshot<K, V> keysOnly(File file, Converter<K, byte[]> keySerializer) {
+        return new CacheSnapshot<>(file, keySerializer, null);
+    }
+
+    /**
+     * Snapshots keys and values, restoring puts the values without touching the backend.
+     */
+    public static <K, V> CacheSnapshot<K, V> keysAndValues(File file, Converter<K, byte[]> keySerializer,
+                                                         Converter<V, byte[]> valueSerializer) {
+        return new CacheSnapshot<>(file, keySerializer, checkNotNull(valueSerializer, "valueSerializer"));
+    }
+
+    public File file() {
+        return file;
+    }
+
+    /**
+     * Appends up to {@code maxEntries} entries of the cache to the file.
+     *
+     * @return number of entries written
+     */
+    public synchronized int write(Cache<K, V> cache, int maxEntries) throws IOException {
+        checkArgument(maxEntries >= 0, "maxEntries must not be negative");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(bytes);
+        int written = 0;
+        for (Map.Entry<K, V> entry : Iterables.limit(cache.asMap().entrySet(), maxEntries)) {
+            byte[] key = keySerializer.convert(entry.getKey());
+            records.writeInt(key.length);
+            records.write(key);
+            if (valueSerializer == null) {
+                records.writeInt(NO_VALUE);
+            } else {
+                byte[] value = valueSerializer.convert(entry.getValue());
+                records.writeInt(value.length);
+                records.write(value);
+            }
+            written++;
+        }
+        records.flush();
+        // a record cut short by a crash must not stay in front of the appended ones, rewrite the file instead
+        long end = file.exists() ? readRecords(null) : 0L;
+        if (end < Integer.BYTES || end < file.length() || file.length() > (long) COMPACTION_FACTOR * bytes.size()) {
+            File temporary = new File(file.getPath() + ".tmp");
+            writeFile(temporary, bytes, false);
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            writeFile(file, bytes, true);
+        }
+        return written;
+    }
+
+    private static void writeFile(File target, ByteArrayOutputStream records, boolean append) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target, append))) {
+            if (!append) {
+                new DataOutputStream(out).writeInt(MAGIC);
+            }
+            records.writeTo(out);
+        }
+    }
+
+    /**
+     * @return the latest record of every key, values are null for records without value
+     * @throws IOException if the file is not a snapshot or a record length is damaged
+     */
+    public Map<K, V> read() throws IOException {
+        LinkedHashMap<K, V> entries = Maps.newLinkedHashMap();
+        if (file.exists()) {
+            readRecords(entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the records into {@code entries}, or only scans them if it is null. A record longer than the rest of the
+     * file was cut short by a crash and ends the scan.
+     *
+     * @return the offset right behind the last complete record, 0 if the file is too short for the magic number
+     */
+    private long readRecords(Map<K, V> entries) throws IOException {
+        long length = file.length();
+        if (length < Integer.BYTES) {
+            return 0L;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a cache snapshot");
+            }
+            long end = Integer.BYTES;
+            while (true) {
+                long position = end;
+                if (length - position < Integer.BYTES) {
+                    return end;
+                }
+                int keyLength = in.readInt();
+                position += Integer.BYTES;
+                if (keyLength < 0) {
+                    throw new IOException(file + " has a negative key length at offset " + end);
+                }
+                if (keyLength > length - position - Integer.BYTES) {
+                    return end;
+                }
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                position += keyLength;
+                int valueLength = in.readInt();
+                position += Integer.BYTES;
+                if (valueLength < NO_VALUE) {
+                    throw new IOException(file + " has a negative value length at offset " + end);
+                }
+                if (valueLength > length - position) {
+                    return end;
+                }
+                V value = null;
+                if (valueLength != NO_VALUE) {
+                    byte[] bytes = new byte[valueLength];
+                    in.readFully(bytes);
+                    position += valueLength;
+                    value = valueSerializer == null || entries == null ? null : valueSerializer.reverse().convert(bytes);
+                }
+                if (entries != null) {
+                    K deserialized = keySerializer.reverse().convert(key);
+                    entries.remove(deserialized);
+                    entries.put(deserialized, value);
+                }
+                end = position;
+            }
+        }
+    }
+
+    /**
+     * Warms the cache from the file. Saved values are put directly, missing values are loaded through the cache on
+     * the executor, throttled to {@code loadsPerSecond} so that the backend is not stampeded.
+     *
+     * @return the number of restored entries, once all loads are done
+     */
+    public ListenableFuture<Integer> restore(LoadingCache<K, V> cache, ListeningExecutorService executor,
+                                             double loadsPerSecond) throws IOException {
+        RateLimiter rateLimiter = RateLimiter.create(loadsPerSecond);
+        List<ListenableFuture<Boolean>> restored = Lists.newArrayList();
+        for (Map.Entry<K, V> entry : read().entrySet()) {
+            if (entry.getValue() != null) {
+                cache.put(entry.getKey(), entry.getValue());
+                restored.add(Futures.immediateFuture(true));
+            } else {
+                restored.add(executor.submit(() -> {
+                    rateLimiter.acquire();
+                    try {
+                        cache.getUnchecked(entry.getKey());
+                        return true;
+                    } catch (RuntimeException e) {
+                        log.warn("failed to restore {}: {}", entry.getKey(), e.getMessage());
+                        return false;
+                    }
+                }));
+            }
+        }
+        return Futures.transform(Futures.allAsList(restored),
+                results -> Iterables.size(Iterables.filter(results, Boolean.TRUE::equals)), MoreExecutors.directExecutor());
+    }
+
+    public ScheduledFuture<?> writePeriodically(Cache<K, V> cache, int maxEntries, long period, TimeUnit unit,
+                                                ScheduledExecutorService executor) {
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                write(cache, maxEntries);
+            } catch (IOException e) {
+                log.warn("failed to snapshot cache to {}: {}", file, e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    public void writeOnShutdown(Cache<K, V> cache, int maxEntries) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                write(cache, maxEntries);
+            } catch (IOException e) {
+                log.warn("failed to snapshot cache to {}: {}", file, e.getMessage());
+            }
+        }));
+    }
+}
@@ -0,0 +1,150 @@
+package sample.guava.cache;
+
+import com.google.common.base.Converter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cost of writing a {@link CacheSnapshot} and the time and the requests a restarted cache needs to reach a 75% hit
+ * rate, starting cold, from a keys only snapshot and from a keys and values snapshot.
+ * <p>
+ * The loader parks for 100 microseconds to stand in for a backend call.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class CacheSnapshotBenchmark {
+    private static final Logger log = LogManager.getLogger(CacheSnapshotBenchmark.class.getName());
+    private static final int ITEMS = 1 << 16;
+    private static final int CAPACITY = 1 << 14;
+    private static final int TRACE_LENGTH = 1 << 20;
+    private static final int HIT_RATE_WINDOW = 1000;
+    private static final double TARGET_HIT_RATE = 0.75D;
+    private static final Converter<Integer, byte[]> INT_SERIALIZER = Converter.from(
+            key -> new byte[]{(byte) (key >>> 24), (byte) (key >>> 16), (byte) (key >>> 8), key.byteValue()},
+            bytes -> (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff));
+
+    @Param
+    private Startup startup;
+
+    private final CacheLoader<Integer, String> loader = new CacheLoader<Integer, String>() {
+        @Override
+        public String load(Integer key) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            return "value" + key;
+        }
+    };
+    private ListeningExecutorService executor;
+    private LoadingCache<Integer, String> source;
+    private CacheSnapshot<Integer, String> snapshot;
+    private int[] trace;
+
+    @Setup
+    public void setUp() throws IOException {
+        executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(8));
+        trace = KeyDistribution.ZIPFIAN.generate(ITEMS, TRACE_LENGTH, 1L);
+        source = CacheBuilder.newBuilder().maximumSize(CAPACITY).build(CacheLoader.from(key -> "value" + key));
+        for (int key : trace) {
+            source.getUnchecked(key);
+        }
+        File file = Files.createTempFile("cache", ".snapshot").toFile();
+        file.deleteOnExit();
+        snapshot = startup.snapshot(file);
+        if (snapshot != null) {
+            snapshot.write(source, CAPACITY);
+            log.info("{} snapshot of {} entries takes {} bytes", startup, source.size(), file.length());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public int write() throws IOException {
+        return snapshot == null ? 0 : snapshot.write(source, CAPACITY);
+    }
+
+    /**
+     * Times a restarted cache serving the trace until the hit rate over the last 1000 requests reached 75%, and logs
+     * the requests that took. JMH does not report auxiliary counters of single shot benchmarks.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    public void warmUp() throws Exception {
+        LoadingCache<Integer, String> cache = CacheBuilder.newBuilder().maximumSize(CAPACITY).build(loader);
+        if (snapshot != null) {
+            snapshot.restore(cache, executor, 100000D).get();
+        }
+        long hits = 0L;
+        for (int i = 0; i < trace.length; i++) {
+            if (cache.getIfPresent(trace[i]) != null) {
+                hits++;
+            } else {
+                cache.getUnchecked(trace[i]);
+            }
+            if ((i + 1) % HIT_RATE_WINDOW == 0) {
+                if (hits >= TARGET_HIT_RATE * HIT_RATE_WINDOW) {
+                    log.info("{} restart reached a {} hit rate after {} requests", startup, TARGET_HIT_RATE, i + 1);
+                    return;
+                }
+                hits = 0L;
+            }
+        }
+        log.info("{} restart never reached a {} hit rate in {} requests", startup, TARGET_HIT_RATE, trace.length);
+    }
+
+    public enum Startup {
+        COLD {
+            @Override
+            CacheSnapshot<Integer, String> snapshot(File file) {
+                return null;
+            }
+        },
+        KEYS {
+            @Override
+            CacheSnapshot<Integer, String> snapshot(File file) {
+                return CacheSnapshot.keysOnly(file, INT_SERIALIZER);
+            }
+        },
+        KEYS_AND_VALUES {
+            @Override
+            CacheSnapshot<Integer, String> snapshot(File file) {
+                return CacheSnapshot.keysAndValues(file, INT_SERIALIZER, OffHeapCache.utf8());
+            }
+        };
+
+        abstract CacheSnapshot<Integer, String> snapshot(File file);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CacheSnapshotBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
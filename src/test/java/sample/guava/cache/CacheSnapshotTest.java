@@ -0,0 +1,148 @@
+package sample.guava.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CacheSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+        @Override
+        public String load(String key) {
+            loads.incrementAndGet();
+            return key.toUpperCase();
+        }
+    };
+    private ListeningExecutorService executor;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+        file = new File(folder.getRoot(), "cache.snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void restoreKeysAndValues() throws Exception {
+        CacheSnapshot<String, String> snapshot = CacheSnapshot.keysAndValues(file, OffHeapCache.utf8(), OffHeapCache.utf8());
+        LoadingCache<String, String> cache = CacheBuilder.from("maximumSize=200,expireAfterWrite=2m").build(loader);
+        cache.getUnchecked("apple");
+        cache.getUnchecked("cat");
+        assertThat(snapshot.write(cache, 100)).isEqualTo(2);
+
+        LoadingCache<String, String> restarted = CacheBuilder.from("maximumSize=200,expireAfterWrite=2m").build(loader);
+        assertThat(snapshot.restore(restarted, executor, 1000D).get()).isEqualTo(2);
+        assertThat(restarted.getIfPresent("apple")).isEqualTo("APPLE");
+        assertThat(restarted.getIfPresent("cat")).isEqualTo("CAT");
+        // values came from the file, not from the loader
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void restoreKeysOnly() throws Exception {
+        CacheSnapshot<String, String> snapshot = CacheSnapshot.keysOnly(file, OffHeapCache.utf8());
+        LoadingCache<String, String> cache = CacheBuilder.from("maximumSize=200,expireAfterWrite=2m").build(loader);
+        for (int i = 0; i < 50; i++) {
+            cache.getUnchecked("key" + i);
+        }
+        assertThat(snapshot.write(cache, 10)).isEqualTo(10);
+
+        LoadingCache<String, String> restarted = CacheBuilder.from("maximumSize=200,expireAfterWrite=2m").build(loader);
+        assertThat(snapshot.restore(restarted, executor, 1000D).get()).isEqualTo(10);
+        assertThat(restarted.size()).isEqualTo(10);
+        assertThat(loads.get()).isEqualTo(60);
+    }
+
+    @Test
+    public void appendAndCompact() throws IOException {
+        CacheSnapshot<String, String> snapshot = CacheSnapshot.keysAndValues(file, OffHeapCache.utf8(), OffHeapCache.utf8());
+        Cache<String, String> cache = CacheBuilder.newBuilder().build();
+        cache.put("apple", "red");
+        snapshot.write(cache, 100);
+        cache.put("apple", "green");
+        cache.put("cat", "black");
+        for (int i = 0; i < 4; i++) {
+            snapshot.write(cache, 100);
+        }
+        Map<String, String> entries = snapshot.read();
+        assertThat(entries).hasSize(2).containsEntry("apple", "green").containsEntry("cat", "black");
+
+        long appended = file.length();
+        cache.invalidateAll();
+        cache.put("dog", "brown");
+        snapshot.write(cache, 100);
+        // the file exceeded four times the new snapshot, so it was rewritten
+        assertThat(file.length()).isLessThan(appended);
+        assertThat(snapshot.read()).hasSize(1).containsEntry("dog", "brown");
+    }
+
+    @Test
+    public void ignoreTruncatedRecord() throws IOException {
+        CacheSnapshot<String, String> snapshot = CacheSnapshot.keysAndValues(file, OffHeapCache.utf8(), OffHeapCache.utf8());
+        Cache<String, String> cache = CacheBuilder.newBuilder().build();
+        cache.put("apple", "red");
+        snapshot.write(cache, 100);
+        cache.put("apple", "green");
+        snapshot.write(cache, 100);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 2);
+        }
+        assertThat(snapshot.read()).hasSize(1).containsEntry("apple", "red");
+    }
+
+    @Test
+    public void writeAfterTruncatedRecord() throws IOException {
+        CacheSnapshot<String, String> snapshot = CacheSnapshot.keysAndValues(file, OffHeapCache.utf8(), OffHeapCache.utf8());
+        Cache<String, String> cache = CacheBuilder.newBuilder().build();
+        cache.put("apple", "red");
+        snapshot.write(cache, 100);
+        cache.put("apple", "green");
+        snapshot.write(cache, 100);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 2);
+        }
+        cache.put("dog", "brown");
+        snapshot.write(cache, 100);
+        assertThat(snapshot.read()).hasSize(2).containsEntry("apple", "green").containsEntry("dog", "brown");
+    }
+
+    @Test
+    public void rejectDamagedLength() throws IOException {
+        CacheSnapshot<String, String> snapshot = CacheSnapshot.keysAndValues(file, OffHeapCache.utf8(), OffHeapCache.utf8());
+        Cache<String, String> cache = CacheBuilder.newBuilder().build();
+        cache.put("apple", "red");
+        snapshot.write(cache, 100);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(Integer.BYTES);
+            raf.writeInt(-7);
+        }
+        assertThatThrownBy(snapshot::read).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> snapshot.write(cache, 100)).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,198 @@
+package sample.guava.cache;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Samples {@link Cache#stats()} on a schedule and reports what happened in each window: hit rate, request, load and
+ * eviction rates, and the load latency percentiles of a {@link LatencyHistogram} fed by {@link #timed(CacheLoader,
+ * LatencyHistogram)}.
+ * <p>
+ * Reads only pay for the counters the cache keeps anyway with {@link CacheBuilder#recordStats()}, the sampler
+ * takes its copies on the scheduler thread and loads pay two {@link System#nanoTime()} calls and an atomic increment.
+ */
+public final class CacheStatsSampler implements Closeable {
+    private final String name;
+    private final Cache<?, ?> cache;
+    private final LatencyHistogram loadLatency;
+    private final Reporter reporter;
+    private final Stopwatch stopwatch = Stopwatch.createStarted();
+    private CacheStats lastStats;
+    private LatencyHistogram.Snapshot lastLatency;
+    private long lastNanos;
+    private ScheduledFuture<?> schedule;
+
+    private CacheStatsSampler(String name, Cache<?, ?> cache, LatencyHistogram loadLatency, Reporter reporter) {
+        this.name = checkNotNull(name, "name");
+        this.cache = checkNotNull(cache, "cache");
+        this.loadLatency = checkNotNull(loadLatency, "loadLatency");
+        this.reporter = checkNotNull(reporter, "reporter");
+        this.lastStats = cache.stats();
+        this.lastLatency = loadLatency.snapshot();
+    }
+
+    /**
+     * @param cache       built with {@link CacheBuilder#recordStats()}, otherwise every window is empty
+     * @param loadLatency the histogram the loader of the cache was wrapped with, see {@link #timed(CacheLoader,
+     *                    LatencyHistogram)}
+     */
+    public static CacheStatsSampler create(String name, Cache<?, ?> cache, LatencyHistogram loadLatency, Reporter reporter) {
+        return new CacheStatsSampler(name, cache, loadLatency, reporter);
+    }
+
+    /**
+     * Wraps a loader to record the latency of every load, bulk load and reload into {@code histogram}.
+     */
+    public static <K, V> CacheLoader<K, V> timed(CacheLoader<K, V> loader, LatencyHistogram histogram) {
+        checkNotNull(loader, "loader");
+        checkNotNull(histogram, "histogram");
+        return new CacheLoader<K, V>() {
+            @Override
+            public V load(K key) throws Exception {
+                long start = System.nanoTime();
+                try {
+                    return loader.load(key);
+                } finally {
+                    histogram.record(System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public Map<K, V> loadAll(Iterable<? extends K> keys) throws Exception {
+                long start = System.nanoTime();
+                try {
+                    return loader.loadAll(keys);
+                } finally {
+                    histogram.record(System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public ListenableFuture<V> reload(K key, V oldValue) throws Exception {
+                long start = System.nanoTime();
+                ListenableFuture<V> future = loader.reload(key, oldValue);
+                future.addListener(() -> histogram.record(System.nanoTime() - start), MoreExecutors.directExecutor());
+                return future;
+            }
+        };
+    }
+
+    public synchronized CacheStatsSampler start(long period, TimeUnit unit, ScheduledExecutorService executor) {
+        checkState(schedule == null, "already started");
+        schedule = executor.scheduleAtFixedRate(() -> reporter.report(name, sample()), period, period, unit);
+        return this;
+    }
+
+    /**
+     * @return what happened since the previous sample, or since creation for the first one
+     */
+    public synchronized Window sample() {
+        CacheStats stats = cache.stats();
+        LatencyHistogram.Snapshot latency = loadLatency.snapshot();
+        long nanos = stopwatch.elapsed(TimeUnit.NANOSECONDS);
+        Window window = new Window(stats.minus(lastStats), latency.minus(lastLatency), nanos - lastNanos);
+        lastStats = stats;
+        lastLatency = latency;
+        lastNanos = nanos;
+        return window;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (schedule != null) {
+            schedule.cancel(false);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Reporter {
+        void report(String name, Window window);
+
+        /**
+         * @return a reporter logging every window at info level through log4j2
+         */
+        static Reporter log4j() {
+            Logger log = LogManager.getLogger(CacheStatsSampler.class.getName());
+            return (name, window) -> log.info("{}: {}", name, window);
+        }
+    }
+
+    public static final class Window {
+        private final CacheStats stats;
+        private final LatencyHistogram.Snapshot loadLatency;
+        private final long elapsedNanos;
+
+        private Window(CacheStats stats, LatencyHistogram.Snapshot loadLatency, long elapsedNanos) {
+            this.stats = stats;
+            this.loadLatency = loadLatency;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the counters of this window only
+         */
+        public CacheStats stats() {
+            return stats;
+        }
+
+        public LatencyHistogram.Snapshot loadLatency() {
+            return loadLatency;
+        }
+
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return 1.0 for a window without requests, like {@link CacheStats#hitRate()}
+         */
+        public double hitRate() {
+            return stats.hitRate();
+        }
+
+        public double requestsPerSecond() {
+            return perSecond(stats.requestCount());
+        }
+
+        public double loadsPerSecond() {
+            return perSecond(stats.loadCount());
+        }
+
+        public double evictionsPerSecond() {
+            return perSecond(stats.evictionCount());
+        }
+
+        private double perSecond(long count) {
+            return elapsedNanos == 0L ? 0D : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("elapsed", TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms")
+                    .add("hitRate", String.format("%.3f", hitRate()))
+                    .add("requests/s", String.format("%.1f", requestsPerSecond()))
+                    .add("loads/s", String.format("%.1f", loadsPerSecond()))
+                    .add("evictions/s", String.format("%.1f", evictionsPerSecond()))
+                    .add("loadLatency", loadLatency)
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package sample.guava.cache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read throughput of a cache without stats, with {@code recordStats()}, and with a {@link CacheStatsSampler}
+ * sampling every 10 milliseconds, to check that sampling stays off the hot path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class CacheStatsSamplerBenchmark {
+    private static final int ITEMS = 1 << 16;
+    private static final int MASK = (1 << 20) - 1;
+
+    @Param
+    private Stats stats;
+
+    private LoadingCache<Integer, String> cache;
+    private CacheStatsSampler sampler;
+    private ScheduledExecutorService executor;
+    private int[] keys;
+
+    @Setup
+    public void setUp() {
+        LatencyHistogram loadLatency = new LatencyHistogram();
+        CacheLoader<Integer, String> loader = CacheStatsSampler.timed(CacheLoader.from(key -> "value" + key), loadLatency);
+        cache = stats.builder().maximumSize(ITEMS / 2).build(loader);
+        keys = KeyDistribution.ZIPFIAN.generate(ITEMS, MASK + 1, 1L);
+        executor = Executors.newSingleThreadScheduledExecutor();
+        if (stats == Stats.SAMPLED) {
+            sampler = CacheStatsSampler.create("benchmark", cache, loadLatency, (name, window) -> {
+            }).start(10, TimeUnit.MILLISECONDS, executor);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (sampler != null) {
+            sampler.close();
+        }
+        executor.shutdownNow();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private int index;
+    }
+
+    @Benchmark
+    public String read(ThreadState state) {
+        return cache.getUnchecked(keys[state.index++ & MASK]);
+    }
+
+    public enum Stats {
+        NONE {
+            @Override
+            CacheBuilder<Object, Object> builder() {
+                return CacheBuilder.newBuilder();
+            }
+        },
+        RECORDED {
+            @Override
+            CacheBuilder<Object, Object> builder() {
+                return CacheBuilder.newBuilder().recordStats();
+            }
+        },
+        SAMPLED {
+            @Override
+            CacheBuilder<Object, Object> builder() {
+                return CacheBuilder.newBuilder().recordStats();
+            }
+        };
+
+        abstract CacheBuilder<Object, Object> builder();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CacheStatsSamplerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
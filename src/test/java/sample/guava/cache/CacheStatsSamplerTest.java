@@ -0,0 +1,90 @@
+package sample.guava.cache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class CacheStatsSamplerTest {
+    private final CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+        @Override
+        public String load(String key) throws InterruptedException {
+            TimeUnit.MILLISECONDS.sleep(key.length());
+            return key.toUpperCase();
+        }
+    };
+
+    @Test
+    public void windowDeltas() {
+        LatencyHistogram loadLatency = new LatencyHistogram();
+        LoadingCache<String, String> cache = CacheBuilder.newBuilder().maximumSize(2).recordStats()
+                .build(CacheStatsSampler.timed(loader, loadLatency));
+        CacheStatsSampler sampler = CacheStatsSampler.create("test", cache, loadLatency, CacheStatsSampler.Reporter.log4j());
+        cache.getUnchecked("a");
+        cache.getUnchecked("a");
+        cache.getUnchecked("b");
+        CacheStatsSampler.Window first = sampler.sample();
+        assertThat(first.stats().requestCount()).isEqualTo(3);
+        assertThat(first.hitRate()).isCloseTo(1D / 3, within(0.001D));
+        assertThat(first.loadLatency().count()).isEqualTo(2);
+
+        cache.getUnchecked("c");
+        cache.getUnchecked("d");
+        CacheStatsSampler.Window second = sampler.sample();
+        assertThat(second.stats().requestCount()).isEqualTo(2);
+        assertThat(second.stats().hitCount()).isZero();
+        assertThat(second.stats().evictionCount()).isEqualTo(2);
+        assertThat(second.loadLatency().count()).isEqualTo(2);
+        assertThat(second.evictionsPerSecond()).isPositive();
+        // the cumulative counters are untouched
+        assertThat(cache.stats().requestCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void loadLatencyPercentiles() {
+        LatencyHistogram loadLatency = new LatencyHistogram();
+        LoadingCache<String, String> cache = CacheBuilder.newBuilder().recordStats()
+                .build(CacheStatsSampler.timed(loader, loadLatency));
+        CacheStatsSampler sampler = CacheStatsSampler.create("test", cache, loadLatency, CacheStatsSampler.Reporter.log4j());
+        for (int i = 0; i < 9; i++) {
+            cache.getUnchecked("k" + i);
+        }
+        cache.getUnchecked("slow key with a long name");
+        CacheStatsSampler.Window window = sampler.sample();
+        assertThat(window.loadLatency().valueAtPercentile(50D)).isBetween(TimeUnit.MILLISECONDS.toNanos(2), TimeUnit.MILLISECONDS.toNanos(20));
+        assertThat(window.loadLatency().max()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(25));
+        // the average hides the slow load the percentiles show
+        assertThat(window.stats().averageLoadPenalty()).isLessThan(window.loadLatency().max());
+    }
+
+    @Test
+    public void reportOnSchedule() throws InterruptedException {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        LatencyHistogram loadLatency = new LatencyHistogram();
+        LoadingCache<String, String> cache = CacheBuilder.newBuilder().recordStats()
+                .build(CacheStatsSampler.timed(loader, loadLatency));
+        List<CacheStatsSampler.Window> windows = Lists.newCopyOnWriteArrayList();
+        CacheStatsSampler.Reporter log4j = CacheStatsSampler.Reporter.log4j();
+        CacheStatsSampler sampler = CacheStatsSampler.create("test", cache, loadLatency, (name, window) -> {
+            log4j.report(name, window);
+            windows.add(window);
+        }).start(50, TimeUnit.MILLISECONDS, executor);
+        for (int i = 0; i < 20; i++) {
+            cache.getUnchecked("k" + i % 5);
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        sampler.close();
+        executor.shutdownNow();
+        assertThat(windows).isNotEmpty();
+        assertThat(windows.stream().mapToLong(window -> window.stats().requestCount()).sum()).isLessThanOrEqualTo(20);
+    }
+}
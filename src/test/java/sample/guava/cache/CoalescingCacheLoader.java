@@ -0,0 +1,182 @@
+package sample.guava.cache;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link CacheLoader} that turns the misses of many threads into a few {@link CacheLoader#loadAll(Iterable)} calls.
+ * <p>
+ * Keys requested through {@link #load(Object)} or {@link #loadAll(Iterable)} are collected into a batch, which is
+ * handed to the delegate once it holds {@code maxBatchSize} keys or once {@code window} has passed since its first key.
+ * A key that is already waiting in a batch or being loaded is not requested again, the callers share its result.
+ * <p>
+ * The delegate should implement {@code loadAll}, otherwise the batched keys are loaded one by one.
+ */
+public final class CoalescingCacheLoader<K, V> extends CacheLoader<K, V> {
+    private final CacheLoader<K, V> delegate;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<K, SettableFuture<V>> loading = Maps.newConcurrentMap();
+    private final Lock lock = new ReentrantLock();
+    private Map<K, SettableFuture<V>> batch = new LinkedHashMap<>();
+    private ScheduledFuture<?> window;
+
+    private CoalescingCacheLoader(CacheLoader<K, V> delegate, int maxBatchSize, long window, TimeUnit unit,
+                                  ScheduledExecutorService executor) {
+        checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        checkArgument(window >= 0, "window must not be negative");
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = unit.toNanos(window);
+        this.executor = checkNotNull(executor, "executor");
+    }
+
+    /**
+     * @param executor runs the window timers and the batched loads
+     */
+    public static <K, V> CoalescingCacheLoader<K, V> create(CacheLoader<K, V> delegate, int maxBatchSize, long window,
+                                                            TimeUnit unit, ScheduledExecutorService executor) {
+        return new CoalescingCacheLoader<>(delegate, maxBatchSize, window, unit, executor);
+    }
+
+    @Override
+    public V load(K key) throws Exception {
+        return getUninterruptibly(enqueue(ImmutableList.of(key)).get(key));
+    }
+
+    @Override
+    public Map<K, V> loadAll(Iterable<? extends K> keys) throws Exception {
+        Map<K, SettableFuture<V>> futures = enqueue(keys);
+        ImmutableMap.Builder<K, V> values = ImmutableMap.builder();
+        for (Map.Entry<K, SettableFuture<V>> entry : futures.entrySet()) {
+            V value = getUninterruptibly(entry.getValue());
+            if (value != null) {
+                values.put(entry.getKey(), value);
+            }
+        }
+        return values.build();
+    }
+
+    private Map<K, SettableFuture<V>> enqueue(Iterable<? extends K> keys) {
+        Map<K, SettableFuture<V>> futures = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            for (K key : keys) {
+                SettableFuture<V> future = loading.get(key);
+                if (future == null) {
+                    future = batch.get(key);
+                }
+                if (future == null) {
+                    future = SettableFuture.create();
+                    if (batch.isEmpty()) {
+                        Map<K, SettableFuture<V>> timed = batch;
+                        window = executor.schedule(() -> flush(timed), windowNanos, TimeUnit.NANOSECONDS);
+                    }
+                    batch.put(key, future);
+                    if (batch.size() >= maxBatchSize) {
+                        dispatch();
+                    }
+                }
+                futures.put(key, future);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return futures;
+    }
+
+    /**
+     * @param timed the batch the window was started for, a window firing while its batch is dispatched by size leaves
+     *              the next batch alone
+     */
+    private void flush(Map<K, SettableFuture<V>> timed) {
+        lock.lock();
+        try {
+            if (batch == timed && !batch.isEmpty()) {
+                dispatch();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * must be called with the lock held
+     */
+    private void dispatch() {
+        Map<K, SettableFuture<V>> dispatched = batch;
+        batch = new LinkedHashMap<>();
+        window.cancel(false);
+        loading.putAll(dispatched);
+        try {
+            executor.execute(() -> loadBatch(dispatched));
+        } catch (RejectedExecutionException e) {
+            for (Map.Entry<K, SettableFuture<V>> entry : dispatched.entrySet()) {
+                loading.remove(entry.getKey(), entry.getValue());
+                entry.getValue().setException(e);
+            }
+        }
+    }
+
+    private void loadBatch(Map<K, SettableFuture<V>> dispatched) {
+        try {
+            Map<K, V> values = loadDelegate(dispatched.keySet());
+            // a key missing from the result completes with null, the cache then raises InvalidCacheLoadException
+            for (Map.Entry<K, SettableFuture<V>> entry : dispatched.entrySet()) {
+                entry.getValue().set(values.get(entry.getKey()));
+            }
+        } catch (Throwable t) {
+            for (SettableFuture<V> future : dispatched.values()) {
+                future.setException(t);
+            }
+        } finally {
+            for (Map.Entry<K, SettableFuture<V>> entry : dispatched.entrySet()) {
+                loading.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private Map<K, V> loadDelegate(Iterable<K> keys) throws Exception {
+        try {
+            return delegate.loadAll(keys);
+        } catch (UnsupportedLoadingOperationException e) {
+            Map<K, V> values = Maps.newHashMapWithExpectedSize(Iterables.size(keys));
+            for (K key : keys) {
+                values.put(key, delegate.load(key));
+            }
+            return values;
+        }
+    }
+
+    private static <V> V getUninterruptibly(SettableFuture<V> future) throws Exception {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (Exception) cause;
+        }
+    }
+}
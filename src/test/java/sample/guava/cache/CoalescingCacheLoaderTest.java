@@ -0,0 +1,153 @@
+package sample.guava.cache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.LoadingCache;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Range;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CoalescingCacheLoaderTest {
+    private final Logger log = LogManager.getLogger();
+    private final AtomicInteger loadAllCalls = new AtomicInteger();
+    private final AtomicInteger loadedKeys = new AtomicInteger();
+    private ScheduledExecutorService scheduler;
+    private ExecutorService pool;
+
+    private final CacheLoader<Integer, String> backingStore = new CacheLoader<Integer, String>() {
+        @Override
+        public String load(Integer key) {
+            throw new AssertionError("single key loads are expected to be batched");
+        }
+
+        @Override
+        public Map<Integer, String> loadAll(Iterable<? extends Integer> keys) {
+            loadAllCalls.incrementAndGet();
+            Map<Integer, String> values = Maps.newHashMap();
+            for (Integer key : keys) {
+                loadedKeys.incrementAndGet();
+                if (key >= 0) {
+                    values.put(key, "value" + key);
+                }
+            }
+            return values;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newScheduledThreadPool(2);
+        pool = Executors.newFixedThreadPool(16);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void coalesceConcurrentMisses() throws Exception {
+        LoadingCache<Integer, String> cache = CacheBuilder.newBuilder()
+                .build(CoalescingCacheLoader.create(backingStore, 500, 20, TimeUnit.MILLISECONDS, scheduler));
+        List<Future<String>> futures = Lists.newArrayList();
+        for (int i = 0; i < 200; i++) {
+            final int key = i % 100;
+            futures.add(pool.submit(() -> cache.getUnchecked(key)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertThat(futures.get(i).get()).isEqualTo("value" + i % 100);
+        }
+        log.info("loadAll calls: {}, loaded keys: {}", loadAllCalls.get(), loadedKeys.get());
+        assertThat(loadedKeys.get()).isEqualTo(100);
+        assertThat(loadAllCalls.get()).isLessThan(100);
+    }
+
+    @Test
+    public void getAllSplitsByBatchSize() throws Exception {
+        LoadingCache<Integer, String> cache = CacheBuilder.newBuilder()
+                .build(CoalescingCacheLoader.create(backingStore, 100, 1, TimeUnit.SECONDS, scheduler));
+        Set<Integer> keys = ContiguousSet.create(Range.closedOpen(0, 500), DiscreteDomain.integers());
+        ImmutableMap<Integer, String> values = cache.getAll(keys);
+        assertThat(values).hasSize(500);
+        assertThat(values.get(499)).isEqualTo("value499");
+        // full batches are dispatched without waiting for the window
+        assertThat(loadAllCalls.get()).isEqualTo(5);
+    }
+
+    @Test
+    public void fullBatchStopsItsWindow() throws Exception {
+        LoadingCache<Integer, String> cache = CacheBuilder.newBuilder()
+                .build(CoalescingCacheLoader.create(backingStore, 2, 400, TimeUnit.MILLISECONDS, scheduler));
+        assertThat(cache.getAll(ImmutableList.of(0, 1))).hasSize(2);
+        TimeUnit.MILLISECONDS.sleep(200);
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        assertThat(cache.getUnchecked(2)).isEqualTo("value2");
+        // the window of the next batch starts with its first key, not with the batch dispatched before
+        assertThat(stopwatch.elapsed(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(300L);
+        assertThat(loadAllCalls.get()).isEqualTo(2);
+    }
+
+    @Test(timeout = 5000L, expected = UncheckedExecutionException.class)
+    public void rejectedBatchFails() {
+        ScheduledThreadPoolExecutor rejecting = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException("shutting down");
+            }
+        };
+        try {
+            LoadingCache<Integer, String> cache = CacheBuilder.newBuilder()
+                    .build(CoalescingCacheLoader.create(backingStore, 100, 1, TimeUnit.MILLISECONDS, rejecting));
+            cache.getUnchecked(1);
+        } finally {
+            rejecting.shutdownNow();
+        }
+    }
+
+    @Test(expected = InvalidCacheLoadException.class)
+    public void missingValue() {
+        LoadingCache<Integer, String> cache = CacheBuilder.newBuilder()
+                .build(CoalescingCacheLoader.create(backingStore, 100, 1, TimeUnit.MILLISECONDS, scheduler));
+        cache.getUnchecked(-1);
+    }
+
+    @Test(expected = UncheckedExecutionException.class)
+    public void loaderThrows() {
+        CacheLoader<Integer, String> failing = new CacheLoader<Integer, String>() {
+            @Override
+            public String load(Integer key) {
+                throw new IllegalStateException("backing store is down");
+            }
+        };
+        LoadingCache<Integer, String> cache = CacheBuilder.newBuilder()
+                .build(CoalescingCacheLoader.create(failing, 100, 1, TimeUnit.MILLISECONDS, scheduler));
+        cache.getUnchecked(1);
+    }
+}
@@ -0,0 +1,114 @@
+package sample.guava.cache;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays a key trace against the cache policies and reports their hit rates.
+ * <p>
+ * Usage: {@code HitRateSimulator [maximumSize] [traceFile]}, the trace file holds one key per line.
+ * Without a trace file a scan-heavy synthetic trace is replayed.
+ */
+public final class HitRateSimulator {
+    private static final Logger log = LogManager.getLogger(HitRateSimulator.class.getName());
+
+    private HitRateSimulator() {
+    }
+
+    public enum Policy {
+        LRU {
+            @Override
+            LoadingCache<Integer, Integer> create(int maximumSize, CacheLoader<Integer, Integer> loader) {
+                // one segment, otherwise the size bound is split across segments and the comparison is unfair
+                return CacheBuilder.newBuilder().concurrencyLevel(1).maximumSize(maximumSize).recordStats().build(loader);
+            }
+        },
+        TINY_LFU {
+            @Override
+            LoadingCache<Integer, Integer> create(int maximumSize, CacheLoader<Integer, Integer> loader) {
+                return TinyLfuCache.create(maximumSize, loader);
+            }
+        };
+
+        abstract LoadingCache<Integer, Integer> create(int maximumSize, CacheLoader<Integer, Integer> loader);
+    }
+
+    public static CacheStats replay(Policy policy, int maximumSize, int[] trace) {
+        LoadingCache<Integer, Integer> cache = policy.create(maximumSize, CacheLoader.from(key -> key));
+        for (int key : trace) {
+            cache.getUnchecked(key);
+        }
+        return cache.stats();
+    }
+
+    /**
+     * Reads a recorded trace, the first token of each line is the key. Keys are renumbered in order of
+     * first appearance so that string and numeric traces are replayed the same way.
+     */
+    public static int[] readTrace(File file) throws IOException {
+        List<String> lines = Files.readLines(file, StandardCharsets.UTF_8);
+        Map<String, Integer> ids = Maps.newHashMap();
+        int[] trace = new int[lines.size()];
+        int length = 0;
+        for (String line : lines) {
+            if (Strings.isNullOrEmpty(line.trim())) {
+                continue;
+            }
+            String key = Splitter.on(' ').trimResults().omitEmptyStrings().split(line).iterator().next();
+            trace[length++] = ids.computeIfAbsent(key, k -> ids.size());
+        }
+        return length == trace.length ? trace : Arrays.copyOf(trace, length);
+    }
+
+    /**
+     * A Zipfian hot set interrupted by sequential scans over keys that are never requested again.
+     *
+     * @param items    number of keys in the hot set
+     * @param length   number of hot set requests
+     * @param scanSize length of a scan, one scan is issued after every {@code 4 * scanSize} hot requests
+     */
+    public static int[] scanTrace(int items, int length, int scanSize, long seed) {
+        int[] hot = KeyDistribution.ZIPFIAN.generate(items, length, seed);
+        int scans = length / (4 * scanSize);
+        int[] trace = new int[length + scans * scanSize];
+        int next = items;
+        int position = 0;
+        for (int i = 0; i < length; i++) {
+            trace[position++] = hot[i];
+            if ((i + 1) % (4 * scanSize) == 0) {
+                for (int j = 0; j < scanSize; j++) {
+                    trace[position++] = next++;
+                }
+            }
+        }
+        return trace;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int maximumSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int[] trace = args.length > 1
+                ? readTrace(new File(args[1]))
+                : scanTrace(maximumSize * 10, maximumSize * 1000, maximumSize * 2, new Random().nextLong());
+        for (Policy policy : Policy.values()) {
+            CacheStats stats = replay(policy, maximumSize, trace);
+            log.info("{} maximumSize: {}, requests: {}, hitRate: {}, evictions: {}",
+                    policy, maximumSize, stats.requestCount(), String.format("%.4f", stats.hitRate()), stats.evictionCount());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package sample.guava.cache;
+
+import com.google.common.cache.AbstractCache.StatsCounter;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs at most one load per key at a time, concurrent callers missing the same key wait for that load
+ * instead of starting their own. Exceptions are reported the way {@link com.google.common.cache.LoadingCache#get(Object)} does.
+ */
+final class InFlightLoads<K, V> {
+    private final ConcurrentMap<K, FutureTask<V>> loading = Maps.newConcurrentMap();
+    private final StatsCounter statsCounter;
+
+    InFlightLoads(StatsCounter statsCounter) {
+        this.statsCounter = statsCounter;
+    }
+
+    /**
+     * @param store receives the loaded value before the key is released, so later callers find it in the cache
+     */
+    V load(K key, Callable<? extends V> valueLoader, BiConsumer<K, V> store) throws ExecutionException {
+        FutureTask<V> task = new FutureTask<>(() -> {
+            V loaded = valueLoader.call();
+            if (loaded == null) {
+                throw new InvalidCacheLoadException("CacheLoader returned null for key " + key + ".");
+            }
+            return loaded;
+        });
+        FutureTask<V> inFlight = loading.putIfAbsent(key, task);
+        if (inFlight == null) {
+            inFlight = task;
+            run(key, task, store);
+        }
+        try {
+            return Uninterruptibles.getUninterruptibly(inFlight);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InvalidCacheLoadException) {
+                throw (InvalidCacheLoadException) cause;
+            } else if (cause instanceof Error) {
+                throw new ExecutionError((Error) cause);
+            } else if (cause instanceof RuntimeException) {
+                throw new UncheckedExecutionException(cause);
+            }
+            throw e;
+        }
+    }
+
+    private void run(K key, FutureTask<V> task, BiConsumer<K, V> store) {
+        long start = System.nanoTime();
+        try {
+            task.run();
+            V value = Uninterruptibles.getUninterruptibly(task);
+            statsCounter.recordLoadSuccess(System.nanoTime() - start);
+            store.accept(key, value);
+        } catch (ExecutionException e) {
+            statsCounter.recordLoadException(System.nanoTime() - start);
+        } finally {
+            loading.remove(key, task);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package sample.guava.cache;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates integer key traces used to drive the cache benchmarks and simulators.
+ */
+public enum KeyDistribution {
+    /**
+     * every key in [0, items) is equally likely
+     */
+    UNIFORM {
+        @Override
+        public int[] generate(int items, int length, long seed) {
+            Preconditions.checkArgument(items > 0, "items must be positive");
+            Random random = new Random(seed);
+            int[] keys = new int[length];
+            for (int i = 0; i < length; i++) {
+                keys[i] = random.nextInt(items);
+            }
+            return keys;
+        }
+    },
+    /**
+     * key k is drawn with probability proportional to 1 / (k + 1)^0.99, so a small head of keys is hot
+     */
+    ZIPFIAN {
+        @Override
+        public int[] generate(int items, int length, long seed) {
+            Preconditions.checkArgument(items > 0, "items must be positive");
+            double[] cdf = new double[items];
+            double sum = 0D;
+            for (int i = 0; i < items; i++) {
+                sum += 1D / Math.pow(i + 1, ZIPF_EXPONENT);
+                cdf[i] = sum;
+            }
+            Random random = new Random(seed);
+            int[] keys = new int[length];
+            for (int i = 0; i < length; i++) {
+                int index = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+                keys[i] = index >= 0 ? index : Math.min(-index - 1, items - 1);
+            }
+            return keys;
+        }
+    };
+
+    private static final double ZIPF_EXPONENT = 0.99D;
+
+    /**
+     * @param items  number of distinct keys
+     * @param length number of keys in the generated trace
+     * @param seed   random seed, so that runs can be compared
+     * @return a trace of keys in [0, items)
+     */
+    public abstract int[] generate(int items, int length, long seed);
+}
@@ -0,0 +1,143 @@
+package sample.guava.cache;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A log-linear histogram of latencies in nanoseconds, in the spirit of HdrHistogram: every power of two is split
+ * into 32 linear sub-buckets, so a reported percentile is at most ~3% above the recorded value, for any value.
+ * <p>
+ * Recording is a single atomic increment and allocates nothing, snapshots copy the counts and can be subtracted
+ * from each other to get the latencies of a window, the same way {@link com.google.common.cache.CacheStats} can.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(nanos, 0L)));
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy);
+    }
+
+    /**
+     * @return the values recorded into any of {@code histograms}, in one copy of the counts
+     */
+    public static Snapshot snapshotOf(LatencyHistogram... histograms) {
+        long[] sum = new long[BUCKETS];
+        for (LatencyHistogram histogram : histograms) {
+            for (int i = 0; i < BUCKETS; i++) {
+                sum[i] += histogram.counts.get(i);
+            }
+        }
+        return new Snapshot(sum);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the highest value counted in the bucket at {@code index}
+     */
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            this.count = Arrays.stream(counts).sum();
+        }
+
+        public long count() {
+            return count;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the latency in nanoseconds at or below which {@code percentile} percent of the values fall,
+         * 0 when nothing was recorded
+         */
+        public long valueAtPercentile(double percentile) {
+            checkArgument(percentile >= 0D && percentile <= 100D, "percentile must be between 0 and 100");
+            long rank = Math.max(1L, (long) Math.ceil(percentile / 100D * count));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValueAt(i);
+                }
+            }
+            return 0L;
+        }
+
+        public long max() {
+            return valueAtPercentile(100D);
+        }
+
+        /**
+         * @return the values recorded since {@code other} was taken
+         */
+        public Snapshot minus(Snapshot other) {
+            long[] difference = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                difference[i] = Math.max(0L, counts[i] - other.counts[i]);
+            }
+            return new Snapshot(difference);
+        }
+
+        /**
+         * @return the values recorded in either snapshot, to merge the histograms of several recorders
+         */
+        public Snapshot plus(Snapshot other) {
+            long[] sum = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                sum[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(sum);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("count", count)
+                    .add("p50", micros(valueAtPercentile(50D)))
+                    .add("p90", micros(valueAtPercentile(90D)))
+                    .add("p99", micros(valueAtPercentile(99D)))
+                    .add("p999", micros(valueAtPercentile(99.9D)))
+                    .add("max", micros(max()))
+                    .toString();
+        }
+
+        private static String micros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package sample.guava.cache;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.snapshot().valueAtPercentile(99D)).isZero();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.count()).isEqualTo(1000);
+        assertThat(snapshot.valueAtPercentile(50D)).isBetween(500_000L, 500_000L * 103 / 100);
+        assertThat(snapshot.valueAtPercentile(99D)).isBetween(990_000L, 990_000L * 103 / 100);
+        assertThat(snapshot.max()).isBetween(1_000_000L, 1_000_000L * 103 / 100);
+    }
+
+    @Test
+    public void bucketBounds() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 65, 1000, 123_456_789, Long.MAX_VALUE / 2}) {
+            long highest = LatencyHistogram.highestValueAt(LatencyHistogram.indexOf(value));
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat(highest - value).isLessThanOrEqualTo(value / 32);
+        }
+    }
+
+    @Test
+    public void minus() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_000);
+        LatencyHistogram.Snapshot before = histogram.snapshot();
+        histogram.record(10);
+        histogram.record(20);
+        LatencyHistogram.Snapshot window = histogram.snapshot().minus(before);
+        assertThat(window.count()).isEqualTo(2);
+        assertThat(window.max()).isEqualTo(20);
+    }
+}
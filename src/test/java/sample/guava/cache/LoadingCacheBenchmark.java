@@ -0,0 +1,142 @@
+package sample.guava.cache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read throughput, sampled latency and allocation per operation of every {@link CacheBuilder} setup
+ * showcased in {@link LoadingCacheTest}.
+ * <p>
+ * Run {@link #main(String[])} to measure each setup with 1, 4, 16 and 64 reader threads,
+ * the gc profiler reports {@code gc.alloc.rate.norm} in bytes per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadingCacheBenchmark {
+    private static final int ITEMS = 1 << 16;
+    private static final int CAPACITY = 1 << 12;
+    private static final int TRACE_LENGTH = 1 << 20;
+    private static final int[] READER_THREADS = {1, 4, 16, 64};
+
+    @Param
+    private CacheSetup setup;
+
+    @Param
+    private KeyDistribution distribution;
+
+    private LoadingCache<String, String> cache;
+    private String[] trace;
+
+    @Setup
+    public void setUp() {
+        CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+            @Override
+            public String load(String key) {
+                return key.toUpperCase();
+            }
+        };
+        // weakKeys() compares keys by identity, so the trace shares one String instance per key
+        String[] keys = new String[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            keys[i] = "key" + i;
+        }
+        int[] indexes = distribution.generate(ITEMS, TRACE_LENGTH, 1L);
+        trace = new String[TRACE_LENGTH];
+        for (int i = 0; i < TRACE_LENGTH; i++) {
+            trace[i] = keys[indexes[i]];
+        }
+        cache = setup.builder().build(loader);
+        for (String key : trace) {
+            cache.getUnchecked(key);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index;
+
+        @Setup
+        public void setUp() {
+            index = ThreadLocalRandom.current().nextInt(TRACE_LENGTH);
+        }
+    }
+
+    @Benchmark
+    public String read(Cursor cursor) {
+        return cache.getUnchecked(trace[cursor.index++ & (TRACE_LENGTH - 1)]);
+    }
+
+    public enum CacheSetup {
+        MAXIMUM_SIZE {
+            @Override
+            CacheBuilder<Object, Object> builder() {
+                return CacheBuilder.newBuilder().maximumSize(CAPACITY);
+            }
+        },
+        WEIGHER {
+            @Override
+            CacheBuilder<Object, Object> builder() {
+                Weigher<Object, Object> weighByLength = (key, value) -> value.toString().length();
+                return CacheBuilder.newBuilder().maximumWeight(CAPACITY * 8L).weigher(weighByLength).recordStats();
+            }
+        },
+        WEAK_KEYS_VALUES {
+            @Override
+            CacheBuilder<Object, Object> builder() {
+                return CacheBuilder.newBuilder().weakKeys().weakValues().maximumSize(CAPACITY);
+            }
+        },
+        SOFT_VALUES {
+            @Override
+            CacheBuilder<Object, Object> builder() {
+                return CacheBuilder.newBuilder().softValues().maximumSize(CAPACITY);
+            }
+        },
+        EXPIRE_AFTER_ACCESS {
+            @Override
+            CacheBuilder<Object, Object> builder() {
+                return CacheBuilder.newBuilder().expireAfterAccess(2, TimeUnit.MINUTES).maximumSize(CAPACITY);
+            }
+        },
+        EXPIRE_AFTER_WRITE {
+            @Override
+            CacheBuilder<Object, Object> builder() {
+                return CacheBuilder.newBuilder().expireAfterWrite(2, TimeUnit.MINUTES).maximumSize(CAPACITY);
+            }
+        },
+        REFRESH_AFTER_WRITE {
+            @Override
+            CacheBuilder<Object, Object> builder() {
+                return CacheBuilder.newBuilder().refreshAfterWrite(1, TimeUnit.SECONDS).maximumSize(CAPACITY);
+            }
+        };
+
+        abstract CacheBuilder<Object, Object> builder();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : READER_THREADS) {
+            Options options = new OptionsBuilder()
+                    .include(LoadingCacheBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
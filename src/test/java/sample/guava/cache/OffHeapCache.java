@@ -0,0 +1,289 @@
+package sample.guava.cache;
+
+import com.google.common.base.Converter;
+import com.google.common.cache.AbstractCache.SimpleStatsCounter;
+import com.google.common.cache.AbstractCache.StatsCounter;
+import com.google.common.cache.AbstractLoadingCache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Lists;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A weight bounded {@link com.google.common.cache.LoadingCache} keeping serialized values outside the Java heap.
+ * <p>
+ * Values are converted to bytes by the serializer and copied into chunks of 1 MB slabs. Like memcached, every
+ * power of two chunk size from 64 bytes up to the slab size has its own slabs and free list, so a value
+ * occupies the smallest chunk it fits in. The heap only holds the keys and a small slot per entry,
+ * thus GC pauses no longer grow with the amount of cached data.
+ * <p>
+ * Eviction follows {@link com.google.common.cache.CacheBuilder#maximumWeight(long)}: the {@link Weigher}
+ * is measured once per entry and least recently used entries are dropped while the total weight is
+ * above the maximum. Slabs are kept for reuse once allocated, so weigh by serialized size to bound the
+ * off-heap footprint. Values larger than a slab are never cached.
+ */
+public final class OffHeapCache<K, V> extends AbstractLoadingCache<K, V> {
+    private static final int SLAB_SIZE = 1 << 20;
+    private static final int MIN_CHUNK_SHIFT = 6;
+
+    private final long maximumWeight;
+    private final Weigher<? super K, ? super V> weigher;
+    private final Converter<V, byte[]> serializer;
+    private final CacheLoader<? super K, V> loader;
+    private final Slabs slabs;
+    private final SizeClass[] sizeClasses;
+    private final LinkedHashMap<K, Slot> slots = new LinkedHashMap<>(16, 0.75F, true);
+    private final StatsCounter statsCounter = new SimpleStatsCounter();
+    private final InFlightLoads<K, V> loads = new InFlightLoads<>(statsCounter);
+    private final Lock lock = new ReentrantLock();
+    private long totalWeight;
+
+    OffHeapCache(long maximumWeight, Weigher<? super K, ? super V> weigher, Converter<V, byte[]> serializer,
+                 CacheLoader<? super K, V> loader, Slabs slabs) {
+        checkArgument(maximumWeight >= 0, "maximumWeight must not be negative");
+        this.maximumWeight = maximumWeight;
+        this.weigher = checkNotNull(weigher, "weigher");
+        this.serializer = checkNotNull(serializer, "serializer");
+        this.loader = checkNotNull(loader, "loader");
+        this.slabs = checkNotNull(slabs, "slabs");
+        this.sizeClasses = new SizeClass[Integer.numberOfTrailingZeros(SLAB_SIZE) - MIN_CHUNK_SHIFT + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(1 << (MIN_CHUNK_SHIFT + i), slabs);
+        }
+    }
+
+    public static <K, V> OffHeapCache<K, V> create(long maximumWeight, Weigher<? super K, ? super V> weigher,
+                                                   Converter<V, byte[]> serializer, CacheLoader<? super K, V> loader) {
+        return new OffHeapCache<>(maximumWeight, weigher, serializer, loader, Slabs.direct());
+    }
+
+    /**
+     * @return a serializer storing strings as UTF-8 bytes
+     */
+    public static Converter<String, byte[]> utf8() {
+        return Converter.from(value -> value.getBytes(StandardCharsets.UTF_8), bytes -> new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public V getIfPresent(Object key) {
+        checkNotNull(key);
+        byte[] bytes;
+        lock.lock();
+        try {
+            Slot slot = slots.get(key);
+            if (slot == null) {
+                statsCounter.recordMisses(1);
+                return null;
+            }
+            statsCounter.recordHits(1);
+            bytes = sizeClasses[slot.sizeClass].read(slot.chunk, slot.length);
+        } finally {
+            lock.unlock();
+        }
+        return serializer.reverse().convert(bytes);
+    }
+
+    @Override
+    public V get(K key) throws ExecutionException {
+        return get(key, () -> loader.load(key));
+    }
+
+    @Override
+    public V get(K key, Callable<? extends V> valueLoader) throws ExecutionException {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        return loads.load(key, valueLoader, this::put);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        byte[] bytes = serializer.convert(value);
+        int weight = weigher.weigh(key, value);
+        checkState(weight >= 0, "Weights must be non-negative");
+        lock.lock();
+        try {
+            release(slots.remove(key));
+            if (bytes.length > SLAB_SIZE || weight > maximumWeight) {
+                statsCounter.recordEviction();
+                return;
+            }
+            int sizeClass = sizeClassOf(bytes.length);
+            int chunk = sizeClasses[sizeClass].allocate();
+            sizeClasses[sizeClass].write(chunk, bytes);
+            slots.put(key, new Slot((byte) sizeClass, chunk, bytes.length, weight));
+            totalWeight += weight;
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the entry without counting a hit or a miss, for a caller that already counted its lookup.
+     *
+     * @return the removed value, null if there was none
+     */
+    V remove(Object key) {
+        checkNotNull(key);
+        byte[] bytes;
+        lock.lock();
+        try {
+            Slot slot = slots.remove(key);
+            if (slot == null) {
+                return null;
+            }
+            bytes = sizeClasses[slot.sizeClass].read(slot.chunk, slot.length);
+            release(slot);
+        } finally {
+            lock.unlock();
+        }
+        return serializer.reverse().convert(bytes);
+    }
+
+    @Override
+    public void invalidate(Object key) {
+        checkNotNull(key);
+        lock.lock();
+        try {
+            release(slots.remove(key));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            for (Slot slot : slots.values()) {
+                release(slot);
+            }
+            slots.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        lock.lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<K, Slot>> eldest = slots.entrySet().iterator();
+        while (totalWeight > maximumWeight && eldest.hasNext()) {
+            Slot slot = eldest.next().getValue();
+            eldest.remove();
+            release(slot);
+            statsCounter.recordEviction();
+        }
+    }
+
+    private void release(Slot slot) {
+        if (slot != null) {
+            sizeClasses[slot.sizeClass].release(slot.chunk);
+            totalWeight -= slot.weight;
+        }
+    }
+
+    private static int sizeClassOf(int length) {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(length, 1) - 1);
+        return Math.max(0, bits - MIN_CHUNK_SHIFT);
+    }
+
+    private static final class Slot {
+        private final byte sizeClass;
+        private final int chunk;
+        private final int length;
+        private final int weight;
+
+        private Slot(byte sizeClass, int chunk, int length, int weight) {
+            this.sizeClass = sizeClass;
+            this.chunk = chunk;
+            this.length = length;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Chunks of one size, guarded by the cache lock.
+     */
+    private static final class SizeClass {
+        private final Slabs slabs;
+        private final int chunkSize;
+        private final int chunksPerSlab;
+        private final List<ByteBuffer> buffers = Lists.newArrayList();
+        private int[] free = new int[16];
+        private int freeCount;
+        private int allocated;
+
+        private SizeClass(int chunkSize, Slabs slabs) {
+            this.slabs = slabs;
+            this.chunkSize = chunkSize;
+            this.chunksPerSlab = SLAB_SIZE / chunkSize;
+        }
+
+        private int allocate() {
+            if (freeCount > 0) {
+                return free[--freeCount];
+            }
+            if (allocated == buffers.size() * chunksPerSlab) {
+                buffers.add(slabs.allocate(SLAB_SIZE));
+            }
+            return allocated++;
+        }
+
+        private void release(int chunk) {
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = chunk;
+        }
+
+        private void write(int chunk, byte[] bytes) {
+            ByteBuffer buffer = buffers.get(chunk / chunksPerSlab);
+            // cast keeps the Java 8 Buffer.position(int) signature when built on a newer JDK
+            ((Buffer) buffer).position((chunk % chunksPerSlab) * chunkSize);
+            buffer.put(bytes);
+        }
+
+        private byte[] read(int chunk, int length) {
+            ByteBuffer buffer = buffers.get(chunk / chunksPerSlab);
+            ((Buffer) buffer).position((chunk % chunksPerSlab) * chunkSize);
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package sample.guava.cache;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the weigher bounded {@link CacheBuilder} cache with {@link OffHeapCache} holding the same data.
+ * <p>
+ * {@code fullGc} times a single {@link System#gc()} with the cache populated, the pause grows with the
+ * number of live objects on heap. {@code read} reports throughput with the gc profiler attached.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g", "-XX:MaxDirectMemorySize=3g"})
+public class OffHeapCacheBenchmark {
+    private static final int VALUE_LENGTH = 512;
+
+    @Param({"100000", "1000000"})
+    private int entries;
+
+    @Param
+    private Store store;
+
+    private LoadingCache<String, String> cache;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        keys = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            keys[i] = "key" + i;
+        }
+        cache = store.create(entries * (long) VALUE_LENGTH);
+        for (String key : keys) {
+            cache.getUnchecked(key);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String read() {
+        return cache.getUnchecked(keys[ThreadLocalRandom.current().nextInt(entries)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 10)
+    public long fullGc() {
+        System.gc();
+        return cache.size();
+    }
+
+    public enum Store {
+        HEAP {
+            @Override
+            LoadingCache<String, String> create(long maximumWeight) {
+                return CacheBuilder.newBuilder().maximumWeight(maximumWeight).weigher(WEIGH_BY_LENGTH).build(LOADER);
+            }
+        },
+        OFF_HEAP {
+            @Override
+            LoadingCache<String, String> create(long maximumWeight) {
+                return OffHeapCache.create(maximumWeight, WEIGH_BY_LENGTH, OffHeapCache.utf8(), LOADER);
+            }
+        };
+
+        private static final Weigher<String, String> WEIGH_BY_LENGTH = (key, value) -> value.length();
+        private static final CacheLoader<String, String> LOADER = new CacheLoader<String, String>() {
+            @Override
+            public String load(String key) {
+                return Strings.padEnd(key, VALUE_LENGTH, '.');
+            }
+        };
+
+        abstract LoadingCache<String, String> create(long maximumWeight);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(OffHeapCacheBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,103 @@
+package sample.guava.cache;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapCacheTest {
+    private final Weigher<String, String> weighByLength = (key, value) -> value.length();
+    private final CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+        @Override
+        public String load(String key) {
+            if (Pattern.compile("[a-zA-Z ]+").matcher(key).matches()) {
+                return key.toUpperCase();
+            } else {
+                throw new IllegalArgumentException(String.format("%s contains non-alphabetical letters", key));
+            }
+        }
+    };
+
+    @Test
+    public void getUnchecked() throws ExecutionException {
+        LoadingCache<String, String> cache = OffHeapCache.create(200, weighByLength, OffHeapCache.utf8(), loader);
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.get("simple test")).isEqualTo("SIMPLE TEST");
+        assertThat(cache.getUnchecked("simple test")).isEqualTo("SIMPLE TEST");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test(expected = UncheckedExecutionException.class)
+    public void get() {
+        LoadingCache<String, String> cache = OffHeapCache.create(200, weighByLength, OffHeapCache.utf8(), loader);
+        cache.getUnchecked("abc1");
+    }
+
+    @Test
+    public void evictByWeigher() {
+        LoadingCache<String, String> cache = OffHeapCache.create(200, weighByLength, OffHeapCache.utf8(), loader);
+        for (int i = 0; i < 100; i++) {
+            cache.getUnchecked(Strings.repeat("a", i % 50 + 1));
+        }
+        assertThat(cache.size()).isLessThan(50);
+        assertThat(cache.stats().evictionCount()).isGreaterThan(0);
+        // the most recent entries survive
+        assertThat(cache.getIfPresent(Strings.repeat("a", 50))).isEqualTo(Strings.repeat("A", 50));
+        // heavier than the whole cache, never stored
+        cache.put("huge", Strings.repeat("x", 201));
+        assertThat(cache.getIfPresent("huge")).isNull();
+    }
+
+    @Test
+    public void largeValuesReuseChunks() {
+        LoadingCache<String, String> cache = OffHeapCache.create(1 << 20, weighByLength, OffHeapCache.utf8(), loader);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key", Strings.repeat(String.valueOf(i), 100000));
+            assertThat(cache.getUnchecked("key")).isEqualTo(Strings.repeat(String.valueOf(i), 100000));
+        }
+        cache.invalidate("key");
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void cacheStats() {
+        LoadingCache<String, String> cache = OffHeapCache.create(200, weighByLength, OffHeapCache.utf8(), loader);
+        cache.getUnchecked("simple test");
+        cache.getUnchecked("apple");
+        cache.getUnchecked("simple test");
+        cache.getUnchecked("cat");
+        cache.getUnchecked("cat");
+        CacheStats stats = cache.stats();
+        assertThat(stats.hitCount()).isEqualTo(2);
+        assertThat(stats.missCount()).isEqualTo(3);
+        assertThat(stats.loadSuccessCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void getWhenCacheMiss() throws ExecutionException {
+        LoadingCache<String, String> cache = OffHeapCache.create(200, weighByLength, OffHeapCache.utf8(), loader);
+        final String key = "Apple";
+        final String value = cache.get(key, key::toLowerCase);
+        assertThat(value).isEqualTo("apple");
+        assertThat(cache.getIfPresent(key)).isEqualTo("apple");
+    }
+
+    @Test
+    public void nonloadingCache() {
+        Cache<String, String> cache = OffHeapCache.create(200, weighByLength, OffHeapCache.utf8(), loader);
+        cache.put("add", "plus");
+        assertThat(cache.getIfPresent("test")).isNullOrEmpty();
+        assertThat(cache.getIfPresent("add")).isEqualTo("plus");
+        cache.invalidateAll();
+        assertThat(cache.getIfPresent("add")).isNull();
+    }
+}
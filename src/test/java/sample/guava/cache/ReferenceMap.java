@@ -0,0 +1,309 @@
+package sample.guava.cache;
+
+import com.google.common.base.FinalizableReferenceQueue;
+import com.google.common.base.FinalizableSoftReference;
+import com.google.common.base.FinalizableWeakReference;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A concurrent map holding its keys through weak or soft references and comparing them by identity, like
+ * {@link MapMaker#weakKeys()}, that drops an entry as soon as the garbage collector clears its key.
+ * <p>
+ * {@code MapMaker} only drains its reference queue during later writes, so a map nobody writes to keeps reporting
+ * collected entries in {@link #size()}. Here every key is a {@link FinalizableWeakReference} or
+ * {@link FinalizableSoftReference}, and the background thread of a {@link FinalizableReferenceQueue} removes its
+ * entry once it is enqueued. Reads and writes never clean up.
+ */
+public final class ReferenceMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+    private static final FinalizableReferenceQueue SHARED_QUEUE = new FinalizableReferenceQueue();
+
+    private final ConcurrentMap<Key, V> entries = Maps.newConcurrentMap();
+    private final Strength strength;
+    private final FinalizableReferenceQueue queue;
+
+    private ReferenceMap(Strength strength, FinalizableReferenceQueue queue) {
+        this.strength = checkNotNull(strength, "strength");
+        this.queue = checkNotNull(queue, "queue");
+    }
+
+    /**
+     * Creates a map drained by a queue shared with all other maps created this way.
+     */
+    public static <K, V> ReferenceMap<K, V> create(Strength strength) {
+        return new ReferenceMap<>(strength, SHARED_QUEUE);
+    }
+
+    public static <K, V> ReferenceMap<K, V> create(Strength strength, FinalizableReferenceQueue queue) {
+        return new ReferenceMap<>(strength, queue);
+    }
+
+    @Override
+    public V get(Object key) {
+        return key == null ? null : entries.get(new Lookup(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && entries.containsKey(new Lookup(key));
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return value != null && entries.containsValue(value);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        checkNotNull(value, "value");
+        // replacing a value keeps the original reference, the new one becomes garbage before it could be enqueued
+        return entries.put(strength.reference(checkNotNull(key, "key"), this), value);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        checkNotNull(value, "value");
+        return entries.putIfAbsent(strength.reference(checkNotNull(key, "key"), this), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key == null ? null : entries.remove(new Lookup(key));
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return key != null && value != null && entries.remove(new Lookup(key), value);
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        checkNotNull(newValue, "newValue");
+        return key != null && oldValue != null && entries.replace(new Lookup(key), oldValue, newValue);
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        checkNotNull(value, "value");
+        return key == null ? null : entries.replace(new Lookup(key), value);
+    }
+
+    /**
+     * @return the number of entries whose key has not been collected yet, a key cleared moments ago may still count
+     * until the background thread removes it
+     */
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+
+            @Override
+            public void clear() {
+                entries.clear();
+            }
+        };
+    }
+
+    /**
+     * Skips entries whose key was collected, {@link #remove()} removes the key of the last entry from the map, also
+     * through the key set and the values.
+     */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+        private final Iterator<Entry<Key, V>> iterator = entries.entrySet().iterator();
+        private Entry<K, V> next;
+        private K lastKey;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && iterator.hasNext()) {
+                Entry<Key, V> entry = iterator.next();
+                @SuppressWarnings("unchecked")
+                K key = (K) entry.getKey().referent();
+                if (key != null) {
+                    next = new SimpleEntry<K, V>(key, entry.getValue()) {
+                        @Override
+                        public V setValue(V value) {
+                            super.setValue(value);
+                            return put(key, value);
+                        }
+                    };
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> entry = next;
+            next = null;
+            lastKey = entry.getKey();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            checkState(lastKey != null, "next() was not called since the last remove()");
+            ReferenceMap.this.remove(lastKey);
+            lastKey = null;
+        }
+    }
+
+    private void reclaim(Key reference) {
+        entries.remove(reference);
+    }
+
+    public enum Strength {
+        WEAK {
+            @Override
+            Key reference(Object key, ReferenceMap<?, ?> map) {
+                return new WeakKey(key, map);
+            }
+        },
+        /**
+         * Keys are cleared only when the heap runs low.
+         */
+        SOFT {
+            @Override
+            Key reference(Object key, ReferenceMap<?, ?> map) {
+                return new SoftKey(key, map);
+            }
+        };
+
+        abstract Key reference(Object key, ReferenceMap<?, ?> map);
+    }
+
+    /**
+     * Keys compare by the identity of their referent, a cleared reference only equals itself so that it can still
+     * be removed.
+     */
+    private interface Key {
+        Object referent();
+
+        static boolean equal(Key key, Object other) {
+            if (key == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Object referent = key.referent();
+            return referent != null && referent == ((Key) other).referent();
+        }
+    }
+
+    private static final class Lookup implements Key {
+        private final Object key;
+
+        private Lookup(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public Object referent() {
+            return key;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return Key.equal(this, other);
+        }
+    }
+
+    private static final class WeakKey extends FinalizableWeakReference<Object> implements Key {
+        private final int hash;
+        private final ReferenceMap<?, ?> map;
+
+        private WeakKey(Object key, ReferenceMap<?, ?> map) {
+            super(key, map.queue);
+            this.hash = System.identityHashCode(key);
+            this.map = map;
+        }
+
+        @Override
+        public Object referent() {
+            return get();
+        }
+
+        @Override
+        public void finalizeReferent() {
+            map.reclaim(this);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return Key.equal(this, other);
+        }
+    }
+
+    private static final class SoftKey extends FinalizableSoftReference<Object> implements Key {
+        private final int hash;
+        private final ReferenceMap<?, ?> map;
+
+        private SoftKey(Object key, ReferenceMap<?, ?> map) {
+            super(key, map.queue);
+            this.hash = System.identityHashCode(key);
+            this.map = map;
+        }
+
+        @Override
+        public Object referent() {
+            return get();
+        }
+
+        @Override
+        public void finalizeReferent() {
+            map.reclaim(this);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return Key.equal(this, other);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package sample.guava.cache;
+
+import com.google.common.collect.MapMaker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read latency of a weak keyed map while other threads keep filling it with keys that become garbage right away,
+ * {@link MapMaker#weakKeys()} against {@link ReferenceMap}.
+ * <p>
+ * After every iteration the entries still held and the used heap are logged, run with the gc profiler to see the
+ * allocation rate and time spent collecting.
+ */
+@State(Scope.Group)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+public class ReferenceMapBenchmark {
+    private static final Logger log = LogManager.getLogger(ReferenceMapBenchmark.class.getName());
+    private static final int LIVE_KEYS = 1 << 12;
+
+    @Param
+    private Implementation implementation;
+
+    private ConcurrentMap<Object, Object> map;
+    private Object[] liveKeys;
+
+    @Setup
+    public void setUp() {
+        map = implementation.create();
+        liveKeys = new Object[LIVE_KEYS];
+        for (int i = 0; i < LIVE_KEYS; i++) {
+            liveKeys[i] = new Object();
+            map.put(liveKeys[i], i);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void retained() throws InterruptedException {
+        System.gc();
+        TimeUnit.MILLISECONDS.sleep(100);
+        Runtime runtime = Runtime.getRuntime();
+        log.info("{} holds {} entries, {} live, heap used {} KB", implementation, map.size(), LIVE_KEYS,
+                (runtime.totalMemory() - runtime.freeMemory()) / 1024);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object read() {
+        return map.get(liveKeys[ThreadLocalRandom.current().nextInt(LIVE_KEYS)]);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Object write() {
+        return map.put(new byte[64], Boolean.TRUE);
+    }
+
+    public enum Implementation {
+        MAP_MAKER {
+            @Override
+            ConcurrentMap<Object, Object> create() {
+                return new MapMaker().weakKeys().makeMap();
+            }
+        },
+        REFERENCE_MAP {
+            @Override
+            ConcurrentMap<Object, Object> create() {
+                return ReferenceMap.create(ReferenceMap.Strength.WEAK);
+            }
+        };
+
+        abstract ConcurrentMap<Object, Object> create();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ReferenceMapBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,65 @@
+package sample.guava.cache;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import sample.guava.bean.Person;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReferenceMapTest {
+    private final Person studentJohn = new Person("John", 20, "Student");
+
+    @Test
+    public void identityKeys() {
+        ConcurrentMap<String, Person> map = ReferenceMap.create(ReferenceMap.Strength.WEAK);
+        String key = new String("john");
+        map.put(key, studentJohn);
+        assertThat(map.get(key)).isSameAs(studentJohn);
+        // equal but not the same key, like MapMaker.weakKeys()
+        assertThat(map.get("john")).isNull();
+        assertThat(map.putIfAbsent(key, new Person("John", 23, "Boxer"))).isSameAs(studentJohn);
+        assertThat(map.replace(key, studentJohn, new Person("John", 23, "Boxer"))).isTrue();
+        assertThat(map.remove(key).getOccupation()).isEqualTo("Boxer");
+        assertThat(map).isEmpty();
+    }
+
+    @Test
+    public void removesThroughViews() {
+        ConcurrentMap<String, Person> map = ReferenceMap.create(ReferenceMap.Strength.WEAK);
+        String john = new String("john");
+        String jane = new String("jane");
+        String joe = new String("joe");
+        Person boxerJoe = new Person("Joe", 30, "Boxer");
+        map.put(john, studentJohn);
+        map.put(jane, new Person("Jane", 21, "Student"));
+        map.put(joe, boxerJoe);
+        assertThat(map.keySet().remove(john)).isTrue();
+        assertThat(map.values().remove(boxerJoe)).isTrue();
+        assertThat(map.keySet()).containsExactly(jane);
+        map.put(joe, boxerJoe);
+        assertThat(map.entrySet().removeIf(entry -> entry.getValue() == boxerJoe)).isTrue();
+        assertThat(map.keySet().retainAll(ImmutableList.of(john))).isTrue();
+        assertThat(map).isEmpty();
+    }
+
+    @Test
+    public void sizeDropsWithoutWrites() throws InterruptedException {
+        ConcurrentMap<Object, Person> map = ReferenceMap.create(ReferenceMap.Strength.WEAK);
+        Object kept = new Object();
+        map.put(kept, studentJohn);
+        for (int i = 0; i < 100; i++) {
+            map.put(new Object(), studentJohn);
+        }
+        // unlike MapMaker, nothing but the garbage collector touches the map from here
+        for (int i = 0; i < 50 && map.size() > 1; i++) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertThat(map.size()).isEqualTo(1);
+        assertThat(map.keySet()).containsExactly(kept);
+        assertThat(map.get(kept)).isSameAs(studentJohn);
+    }
+}
@@ -0,0 +1,330 @@
+package sample.guava.cache;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.ForwardingLoadingCache;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link LoadingCache} that refreshes hot entries in the background before they go stale,
+ * instead of waiting for a read to trigger {@link CacheLoader#reload(Object, Object)} the way
+ * {@link CacheBuilder#refreshAfterWrite(long, TimeUnit)} does.
+ * <p>
+ * Every entry read since its last load becomes due for a refresh after {@code refreshAfter}, minus up to 10% of
+ * random jitter so that entries loaded together do not reload together. A periodic scan queues due entries once,
+ * and at most {@code maxConcurrentReloads} reloads run at a time. Entries nobody read are left to expire. A reloaded
+ * value only replaces the value it was reloaded from, an entry invalidated, evicted or put meanwhile keeps its state.
+ * <p>
+ * Do not combine with {@code refreshAfterWrite} on the builder, it would trigger reloads on read again.
+ */
+public final class RefreshingCache<K, V> extends ForwardingLoadingCache<K, V> implements Closeable {
+    private static final double JITTER = 0.1D;
+
+    private final Logger log = LogManager.getLogger(this.getClass().getName());
+    private final LoadingCache<K, V> delegate;
+    private final CacheLoader<K, V> loader;
+    private final long refreshNanos;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<K, Freshness> tracked = Maps.newConcurrentMap();
+    private final Queue<K> queue = Queues.newConcurrentLinkedQueue();
+    // keys in the queue or reloading, a key leaves once its reload is done
+    private final Set<K> queued = Sets.newConcurrentHashSet();
+    private final Semaphore reloadPermits;
+    private final ScheduledFuture<?> scan;
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    private RefreshingCache(CacheBuilder<? super K, ? super V> builder, CacheLoader<K, V> loader, long refreshAfter,
+                            TimeUnit unit, int maxConcurrentReloads, ScheduledExecutorService executor) {
+        checkArgument(refreshAfter > 0, "refreshAfter must be positive");
+        checkArgument(maxConcurrentReloads > 0, "maxConcurrentReloads must be positive");
+        this.loader = checkNotNull(loader, "loader");
+        this.executor = checkNotNull(executor, "executor");
+        this.refreshNanos = unit.toNanos(refreshAfter);
+        this.reloadPermits = new Semaphore(maxConcurrentReloads);
+        this.delegate = builder.build(new CacheLoader<K, V>() {
+            @Override
+            public V load(K key) throws Exception {
+                V value = loader.load(key);
+                loaded(key, -1);
+                return value;
+            }
+
+            @Override
+            public Map<K, V> loadAll(Iterable<? extends K> keys) throws Exception {
+                Map<K, V> values = loader.loadAll(keys);
+                values.keySet().forEach(key -> loaded(key, -1));
+                return values;
+            }
+        });
+        long period = Math.max(refreshNanos / 10, TimeUnit.MILLISECONDS.toNanos(1));
+        this.scan = executor.scheduleWithFixedDelay(this::scan, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param executor runs the periodic scan and the reloads, reloads returning a future of their own complete elsewhere
+     */
+    public static <K, V> RefreshingCache<K, V> create(CacheBuilder<? super K, ? super V> builder, CacheLoader<K, V> loader,
+                                                      long refreshAfter, TimeUnit unit, int maxConcurrentReloads,
+                                                      ScheduledExecutorService executor) {
+        return new RefreshingCache<>(builder, loader, refreshAfter, unit, maxConcurrentReloads, executor);
+    }
+
+    @Override
+    protected LoadingCache<K, V> delegate() {
+        return delegate;
+    }
+
+    @Override
+    public V get(K key) throws ExecutionException {
+        V value = super.get(key);
+        accessed(key);
+        return value;
+    }
+
+    @Override
+    public V getUnchecked(K key) {
+        V value = super.getUnchecked(key);
+        accessed(key);
+        return value;
+    }
+
+    @Override
+    public ImmutableMap<K, V> getAll(Iterable<? extends K> keys) throws ExecutionException {
+        ImmutableMap<K, V> values = super.getAll(keys);
+        values.keySet().forEach(this::accessed);
+        return values;
+    }
+
+    @Override
+    public V getIfPresent(Object key) {
+        V value = super.getIfPresent(key);
+        if (value != null) {
+            accessed(key);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        super.put(key, value);
+        loaded(key, 0);
+    }
+
+    @Override
+    public void invalidate(Object key) {
+        super.invalidate(key);
+        tracked.remove(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        super.invalidateAll();
+        tracked.clear();
+    }
+
+    public Metrics metrics() {
+        long refreshes = refreshCount.get();
+        return new Metrics(queue.size(), refreshes, failureCount.get(),
+                refreshes == 0L ? 0L : totalLagNanos.get() / refreshes, maxLagNanos.get());
+    }
+
+    @Override
+    public void close() {
+        scan.cancel(false);
+    }
+
+    /**
+     * @param reads -1 when the load was caused by a read, which is counted right after and must not make the entry hot
+     */
+    private void loaded(K key, int reads) {
+        long jitter = (long) (refreshNanos * JITTER * ThreadLocalRandom.current().nextDouble());
+        tracked.put(key, new Freshness(System.nanoTime() + refreshNanos - jitter, reads));
+    }
+
+    private void accessed(Object key) {
+        Freshness freshness = tracked.get(key);
+        if (freshness != null && freshness.reads < 1) {
+            freshness.reads++;
+        }
+    }
+
+    private void scan() {
+        long now = System.nanoTime();
+        for (Map.Entry<K, Freshness> entry : tracked.entrySet()) {
+            Freshness freshness = entry.getValue();
+            if (now - freshness.dueAt < 0L) {
+                // not due, the cache may not hold the value of a load still in flight yet
+                continue;
+            }
+            if (!delegate.asMap().containsKey(entry.getKey())) {
+                tracked.remove(entry.getKey(), freshness);
+            } else if (freshness.reads > 0 && queued.add(entry.getKey())) {
+                queue.add(entry.getKey());
+            }
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (!queue.isEmpty() && reloadPermits.tryAcquire()) {
+            K key = queue.poll();
+            if (key == null) {
+                reloadPermits.release();
+                return;
+            }
+            try {
+                executor.execute(() -> reload(key));
+            } catch (RejectedExecutionException e) {
+                // keep the key and the scan, the next scan or reload tries again
+                reloadPermits.release();
+                queue.add(key);
+                log.warn("refresh of {} rejected: {}", key, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void reload(K key) {
+        Freshness freshness = tracked.get(key);
+        V oldValue = delegate.asMap().get(key);
+        if (freshness == null || oldValue == null) {
+            done(key);
+            return;
+        }
+        ListenableFuture<V> future;
+        try {
+            future = loader.reload(key, oldValue);
+        } catch (Throwable t) {
+            future = Futures.immediateFailedFuture(t);
+        }
+        Futures.addCallback(future, new FutureCallback<V>() {
+            @Override
+            public void onSuccess(V value) {
+                if (value == null) {
+                    onFailure(new CacheLoader.InvalidCacheLoadException("CacheLoader returned null for key " + key + "."));
+                    return;
+                }
+                if (delegate.asMap().replace(key, oldValue, value)) {
+                    loaded(key, 0);
+                    recordLag(System.nanoTime() - freshness.dueAt);
+                }
+                done(key);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failureCount.incrementAndGet();
+                log.warn("refresh of {} failed: {}", key, t.getMessage());
+                // keep serving the old value, retry on the next scan
+                done(key);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void done(K key) {
+        queued.remove(key);
+        reloadPermits.release();
+        drain();
+    }
+
+    private void recordLag(long lagNanos) {
+        refreshCount.incrementAndGet();
+        totalLagNanos.addAndGet(lagNanos);
+        maxLagNanos.accumulateAndGet(lagNanos, Math::max);
+    }
+
+    private static final class Freshness {
+        private final long dueAt;
+        // only needs to tell whether the entry was read since its load, racy increments are fine
+        private volatile int reads;
+
+        private Freshness(long dueAt, int reads) {
+            this.dueAt = dueAt;
+            this.reads = reads;
+        }
+    }
+
+    public static final class Metrics {
+        private final int queueDepth;
+        private final long refreshCount;
+        private final long failureCount;
+        private final long averageLagNanos;
+        private final long maxLagNanos;
+
+        private Metrics(int queueDepth, long refreshCount, long failureCount, long averageLagNanos, long maxLagNanos) {
+            this.queueDepth = queueDepth;
+            this.refreshCount = refreshCount;
+            this.failureCount = failureCount;
+            this.averageLagNanos = averageLagNanos;
+            this.maxLagNanos = maxLagNanos;
+        }
+
+        /**
+         * @return number of due entries waiting for a reload permit
+         */
+        public int queueDepth() {
+            return queueDepth;
+        }
+
+        public long refreshCount() {
+            return refreshCount;
+        }
+
+        public long failureCount() {
+            return failureCount;
+        }
+
+        /**
+         * @return average time between an entry becoming due and its refreshed value being stored
+         */
+        public long averageLagNanos() {
+            return averageLagNanos;
+        }
+
+        public long maxLagNanos() {
+            return maxLagNanos;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("queueDepth", queueDepth)
+                    .add("refreshCount", refreshCount)
+                    .add("failureCount", failureCount)
+                    .add("averageLag", TimeUnit.NANOSECONDS.toMicros(averageLagNanos) + "us")
+                    .add("maxLag", TimeUnit.NANOSECONDS.toMicros(maxLagNanos) + "us")
+                    .toString();
+        }
+    }
+}
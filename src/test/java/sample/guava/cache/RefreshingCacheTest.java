@@ -0,0 +1,149 @@
+package sample.guava.cache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Multiset;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RefreshingCacheTest {
+    private final Logger log = LogManager.getLogger();
+    private final Multiset<String> loads = ConcurrentHashMultiset.create();
+    private ScheduledExecutorService executor;
+
+    private final CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+        @Override
+        public String load(String key) {
+            loads.add(key);
+            return key.toUpperCase() + loads.count(key);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        executor = Executors.newScheduledThreadPool(8);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void refreshHotEntriesOnly() throws InterruptedException {
+        RefreshingCache<String, String> cache = RefreshingCache.create(
+                CacheBuilder.newBuilder().maximumSize(200).expireAfterWrite(3, TimeUnit.SECONDS),
+                loader, 200, TimeUnit.MILLISECONDS, 2, executor);
+        assertThat(cache.getUnchecked("hot")).isEqualTo("HOT1");
+        assertThat(cache.getUnchecked("cold")).isEqualTo("COLD1");
+        for (int i = 0; i < 10; i++) {
+            TimeUnit.MILLISECONDS.sleep(100);
+            cache.getUnchecked("hot");
+        }
+        log.info("loads: {}, metrics: {}", loads, cache.metrics());
+        assertThat(loads.count("hot")).isGreaterThan(1);
+        assertThat(loads.count("cold")).isEqualTo(1);
+        // reads never waited for a reload
+        assertThat(cache.getUnchecked("hot")).startsWith("HOT");
+        assertThat(cache.metrics().refreshCount()).isPositive().isLessThanOrEqualTo(loads.count("hot") - 1);
+        cache.close();
+    }
+
+    @Test
+    public void capConcurrentReloads() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CacheLoader<Integer, Integer> slowLoader = new CacheLoader<Integer, Integer>() {
+            @Override
+            public Integer load(Integer key) throws InterruptedException {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                TimeUnit.MILLISECONDS.sleep(20);
+                running.decrementAndGet();
+                return key;
+            }
+        };
+        RefreshingCache<Integer, Integer> cache = RefreshingCache.create(
+                CacheBuilder.newBuilder(), slowLoader, 50, TimeUnit.MILLISECONDS, 2, executor);
+        for (int i = 0; i < 20; i++) {
+            cache.getUnchecked(i);
+            cache.getUnchecked(i);
+        }
+        maxRunning.set(0);
+        TimeUnit.MILLISECONDS.sleep(400);
+        log.info("metrics: {}", cache.metrics());
+        assertThat(cache.metrics().refreshCount()).isGreaterThan(0);
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+        cache.close();
+    }
+
+    @Test
+    public void keepInvalidatedEntriesOut() throws InterruptedException {
+        CountDownLatch isReloading = new CountDownLatch(1);
+        CountDownLatch isInvalidated = new CountDownLatch(1);
+        CacheLoader<String, String> blockingLoader = new CacheLoader<String, String>() {
+            @Override
+            public String load(String key) throws InterruptedException {
+                loads.add(key);
+                if (loads.count(key) > 1) {
+                    isReloading.countDown();
+                    isInvalidated.await();
+                }
+                return key.toUpperCase() + loads.count(key);
+            }
+        };
+        RefreshingCache<String, String> cache = RefreshingCache.create(
+                CacheBuilder.newBuilder(), blockingLoader, 50, TimeUnit.MILLISECONDS, 1, executor);
+        cache.getUnchecked("key");
+        cache.getUnchecked("key");
+        assertThat(isReloading.await(5, TimeUnit.SECONDS)).isTrue();
+        cache.invalidate("key");
+        isInvalidated.countDown();
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertThat(cache.asMap()).doesNotContainKey("key");
+        assertThat(loads.count("key")).isEqualTo(2);
+        cache.close();
+    }
+
+    @Test
+    public void survivesRejectedReloads() throws InterruptedException {
+        AtomicInteger rejections = new AtomicInteger(3);
+        ScheduledThreadPoolExecutor rejecting = new ScheduledThreadPoolExecutor(2) {
+            @Override
+            public void execute(Runnable command) {
+                if (rejections.getAndDecrement() > 0)
+                    throw new RejectedExecutionException("busy");
+                super.execute(command);
+            }
+        };
+        try {
+            RefreshingCache<String, String> cache = RefreshingCache.create(
+                    CacheBuilder.newBuilder(), loader, 50, TimeUnit.MILLISECONDS, 1, rejecting);
+            cache.getUnchecked("key");
+            cache.getUnchecked("key");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (cache.metrics().refreshCount() == 0L && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            // the permit of every rejected reload came back and the scan kept running
+            assertThat(cache.metrics().refreshCount()).isPositive();
+            assertThat(rejections.get()).isNegative();
+            cache.close();
+        } finally {
+            rejecting.shutdownNow();
+        }
+    }
+}
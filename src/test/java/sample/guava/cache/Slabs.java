@@ -0,0 +1,54 @@
+package sample.guava.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Source of the fixed size memory regions that {@link OffHeapCache} carves its chunks from.
+ */
+abstract class Slabs {
+
+    abstract ByteBuffer allocate(int slabSize);
+
+    /**
+     * Slabs allocated by {@link ByteBuffer#allocateDirect(int)}, outside the Java heap.
+     */
+    static Slabs direct() {
+        return new Slabs() {
+            @Override
+            ByteBuffer allocate(int slabSize) {
+                return ByteBuffer.allocateDirect(slabSize);
+            }
+        };
+    }
+
+    /**
+     * Slabs mapped one after the other from {@code file}, which grows by a slab at a time. The operating system
+     * pages them in and out, so the cache can hold more than fits in memory. The file is deleted on exit, its
+     * content is not meant to survive a restart.
+     * <p>
+     * Like the size classes it serves, the returned instance relies on the cache lock.
+     */
+    static Slabs mapped(File file) {
+        return new Slabs() {
+            private long length;
+
+            @Override
+            ByteBuffer allocate(int slabSize) {
+                file.deleteOnExit();
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    // a mapping stays valid after its channel is closed
+                    ByteBuffer slab = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, length, slabSize);
+                    length += slabSize;
+                    return slab;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
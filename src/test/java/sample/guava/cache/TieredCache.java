@@ -0,0 +1,172 @@
+package sample.guava.cache;
+
+import com.google.common.base.Converter;
+import com.google.common.cache.AbstractCache.SimpleStatsCounter;
+import com.google.common.cache.AbstractCache.StatsCounter;
+import com.google.common.cache.AbstractLoadingCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link com.google.common.cache.LoadingCache} with two tiers: a regular Guava cache on the heap in front of an
+ * {@link OffHeapCache} whose slabs are mapped from a local file, for working sets much larger than the heap.
+ * <p>
+ * Entries the heap tier evicts for size, as reported to its {@link RemovalListener}, are demoted to the file tier.
+ * Expired, collected and replaced entries are not. A hit in the file tier moves the entry back to the heap tier,
+ * only misses in both tiers reach the loader.
+ */
+public final class TieredCache<K, V> extends AbstractLoadingCache<K, V> {
+    private final Cache<K, V> l1;
+    private final OffHeapCache<K, V> l2;
+    private final CacheLoader<? super K, V> loader;
+    private final StatsCounter statsCounter = new SimpleStatsCounter();
+    private final StatsCounter l1StatsCounter = new SimpleStatsCounter();
+
+    private TieredCache(CacheBuilder<Object, Object> l1Builder, long l2MaximumWeight, Weigher<? super K, ? super V> l2Weigher,
+                        Converter<V, byte[]> serializer, File l2File, CacheLoader<? super K, V> loader) {
+        this.loader = checkNotNull(loader, "loader");
+        this.l2 = new OffHeapCache<>(l2MaximumWeight, l2Weigher, serializer, loader, Slabs.mapped(l2File));
+        RemovalListener<K, V> demote = notification -> {
+            if (notification.getCause() == RemovalCause.SIZE) {
+                l1StatsCounter.recordEviction();
+                l2.put(notification.getKey(), notification.getValue());
+            }
+        };
+        this.l1 = l1Builder.removalListener(demote).build();
+    }
+
+    /**
+     * @param l1Builder       configures the heap tier, its removal listener is taken
+     * @param l2MaximumWeight bounds the file tier, see {@link OffHeapCache}
+     * @param l2File          backs the file tier, deleted on exit
+     */
+    public static <K, V> TieredCache<K, V> create(CacheBuilder<Object, Object> l1Builder, long l2MaximumWeight,
+                                                  Weigher<? super K, ? super V> l2Weigher, Converter<V, byte[]> serializer,
+                                                  File l2File, CacheLoader<? super K, V> loader) {
+        return new TieredCache<>(l1Builder, l2MaximumWeight, l2Weigher, serializer, l2File, loader);
+    }
+
+    @Override
+    public V getIfPresent(Object key) {
+        V value = l1.getIfPresent(key);
+        if (value != null) {
+            l1StatsCounter.recordHits(1);
+            statsCounter.recordHits(1);
+            return value;
+        }
+        l1StatsCounter.recordMisses(1);
+        @SuppressWarnings("unchecked")
+        K k = (K) key;
+        value = promote(k);
+        if (value == null) {
+            statsCounter.recordMisses(1);
+        } else {
+            statsCounter.recordHits(1);
+        }
+        return value;
+    }
+
+    @Override
+    public V get(K key) throws ExecutionException {
+        return get(key, () -> loader.load(key));
+    }
+
+    @Override
+    public V get(K key, Callable<? extends V> valueLoader) throws ExecutionException {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        // the heap tier dedupes concurrent loads, and looks at the file tier again in case another thread demoted it,
+        // without counting that second look in the stats of the file tier
+        return l1.get(key, () -> {
+            V demoted = l2.remove(key);
+            if (demoted != null) {
+                return demoted;
+            }
+            long start = System.nanoTime();
+            try {
+                V loaded = valueLoader.call();
+                statsCounter.recordLoadSuccess(System.nanoTime() - start);
+                return loaded;
+            } catch (Exception | Error e) {
+                statsCounter.recordLoadException(System.nanoTime() - start);
+                throw e;
+            }
+        });
+    }
+
+    @Override
+    public void put(K key, V value) {
+        l2.invalidate(key);
+        l1.put(key, value);
+    }
+
+    @Override
+    public void invalidate(Object key) {
+        l1.invalidate(key);
+        l2.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        // invalidated entries are removed explicitly, so nothing is demoted
+        l1.invalidateAll();
+        l2.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return l1.size() + l2.size();
+    }
+
+    /**
+     * @return requests served by either tier count as hits, loads are those reaching the loader
+     */
+    @Override
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    /**
+     * @return hits and misses of the heap tier, evictions are demotions to the file tier
+     */
+    public CacheStats l1Stats() {
+        return l1StatsCounter.snapshot();
+    }
+
+    /**
+     * @return hits and misses of the file tier for requests the heap tier missed
+     */
+    public CacheStats l2Stats() {
+        return l2.stats();
+    }
+
+    public long l1Size() {
+        return l1.size();
+    }
+
+    public long l2Size() {
+        return l2.size();
+    }
+
+    private V promote(K key) {
+        V value = l2.getIfPresent(key);
+        if (value != null) {
+            l2.invalidate(key);
+            l1.put(key, value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,107 @@
+package sample.guava.cache;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Read latency and hit rate per tier of a heap only cache against a {@link TieredCache}, whose heap tier has the
+ * same size, over a zipfian working set 32 times larger than the heap tier.
+ * <p>
+ * The loader parks for 50 microseconds to stand in for a backend call. Hit rates per tier are logged after every
+ * iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TieredCacheBenchmark {
+    private static final Logger log = LogManager.getLogger(TieredCacheBenchmark.class.getName());
+    private static final int L1_SIZE = 1 << 13;
+    private static final int ITEMS = L1_SIZE * 32;
+    private static final int MASK = (1 << 20) - 1;
+    private static final String PADDING = Strings.repeat("x", 100);
+
+    @Param
+    private Tiers tiers;
+
+    private LoadingCache<Integer, String> cache;
+    private int[] keys;
+
+    @Setup
+    public void setUp() throws IOException {
+        CacheLoader<Integer, String> loader = new CacheLoader<Integer, String>() {
+            @Override
+            public String load(Integer key) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                return key + PADDING;
+            }
+        };
+        File file = Files.createTempFile("l2", ".slabs").toFile();
+        cache = tiers.create(loader, file);
+        keys = KeyDistribution.ZIPFIAN.generate(ITEMS, MASK + 1, 1L);
+    }
+
+    @TearDown(Level.Iteration)
+    public void hitRates() {
+        if (cache instanceof TieredCache) {
+            TieredCache<Integer, String> tiered = (TieredCache<Integer, String>) cache;
+            log.info("{}: hit rate {}, l1 {}, l2 {}, l2 size {}", tiers, cache.stats().hitRate(),
+                    tiered.l1Stats().hitRate(), tiered.l2Stats().hitRate(), tiered.l2Size());
+        } else {
+            log.info("{}: hit rate {}", tiers, cache.stats().hitRate());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private int index;
+    }
+
+    @Benchmark
+    public String read(ThreadState state) {
+        return cache.getUnchecked(keys[state.index++ & MASK]);
+    }
+
+    public enum Tiers {
+        HEAP {
+            @Override
+            LoadingCache<Integer, String> create(CacheLoader<Integer, String> loader, File file) {
+                return CacheBuilder.newBuilder().maximumSize(L1_SIZE).recordStats().build(loader);
+            }
+        },
+        HEAP_AND_MAPPED_FILE {
+            @Override
+            LoadingCache<Integer, String> create(CacheLoader<Integer, String> loader, File file) {
+                return TieredCache.create(CacheBuilder.newBuilder().maximumSize(L1_SIZE), 1L << 30,
+                        (key, value) -> value.length(), OffHeapCache.utf8(), file, loader);
+            }
+        };
+
+        abstract LoadingCache<Integer, String> create(CacheLoader<Integer, String> loader, File file);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TieredCacheBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,80 @@
+package sample.guava.cache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.Weigher;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TieredCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+        @Override
+        public String load(String key) {
+            loads.incrementAndGet();
+            return key.toUpperCase();
+        }
+    };
+    private final Weigher<String, String> weighByLength = (key, value) -> value.length();
+
+    private TieredCache<String, String> create(CacheBuilder<Object, Object> l1Builder) {
+        return TieredCache.create(l1Builder, 1 << 20, weighByLength, OffHeapCache.utf8(),
+                new File(folder.getRoot(), "l2.slabs"), loader);
+    }
+
+    @Test
+    public void demoteAndPromote() {
+        TieredCache<String, String> cache = create(CacheBuilder.newBuilder().maximumSize(2).concurrencyLevel(1));
+        cache.getUnchecked("apple");
+        cache.getUnchecked("cat");
+        cache.getUnchecked("dog");
+        assertThat(cache.l1Size()).isEqualTo(2);
+        assertThat(cache.l2Size()).isEqualTo(1);
+        assertThat(cache.l1Stats().evictionCount()).isEqualTo(1);
+
+        // apple was demoted, reading it promotes it back and demotes the eldest of the heap tier instead
+        assertThat(cache.getUnchecked("apple")).isEqualTo("APPLE");
+        assertThat(loads.get()).isEqualTo(3);
+        assertThat(cache.l2Stats().hitCount()).isEqualTo(1);
+        assertThat(cache.l1Size()).isEqualTo(2);
+        assertThat(cache.l2Size()).isEqualTo(1);
+        // one miss in the file tier for each of the three loads
+        assertThat(cache.l2Stats().missCount()).isEqualTo(3);
+        assertThat(cache.stats().loadCount()).isEqualTo(3);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void expiredEntriesAreNotDemoted() throws InterruptedException {
+        TieredCache<String, String> cache = create(CacheBuilder.newBuilder().expireAfterWrite(50, TimeUnit.MILLISECONDS));
+        cache.getUnchecked("apple");
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat(cache.getIfPresent("apple")).isNull();
+        assertThat(cache.l2Size()).isZero();
+    }
+
+    @Test
+    public void putAndInvalidateBothTiers() {
+        TieredCache<String, String> cache = create(CacheBuilder.newBuilder().maximumSize(1));
+        cache.getUnchecked("apple");
+        cache.getUnchecked("cat");
+        assertThat(cache.l2Size()).isEqualTo(1);
+        // the stale copy in the file tier must not come back
+        cache.put("apple", "green");
+        assertThat(cache.getIfPresent("apple")).isEqualTo("green");
+        cache.invalidate("cat");
+        cache.invalidate("apple");
+        assertThat(cache.getIfPresent("cat")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+}
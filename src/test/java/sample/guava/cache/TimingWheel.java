@@ -0,0 +1,114 @@
+package sample.guava.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel: five wheels of 64 buckets, ticking every ~1 ms, ~67 ms, ~4.3 s, ~4.6 min and
+ * ~4.9 h. An entry goes to the bucket of its expiration time on the finest wheel whose 64 buckets cover the
+ * remaining time. When the clock passes a bucket, its entries either expire or, if they are not due yet, cascade
+ * into a finer wheel. Scheduling and removing are O(1) and every entry cascades at most four times, instead of
+ * keeping a queue sorted by expiration or scanning all entries.
+ * <p>
+ * Entries may expire up to one tick late, callers that need exact expiration check {@link Node#expiresAt} on read.
+ * Not thread safe.
+ */
+final class TimingWheel<K, V> {
+    private static final int[] SHIFTS = {20, 26, 32, 38, 44};
+    private static final int BUCKETS = 64;
+    private static final int MASK = BUCKETS - 1;
+
+    private final Node<K, V>[][] wheels;
+    private final Consumer<Node<K, V>> onExpire;
+    private long time;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long nanos, Consumer<Node<K, V>> onExpire) {
+        this.time = nanos;
+        this.onExpire = onExpire;
+        this.wheels = new Node[SHIFTS.length][BUCKETS];
+        for (Node<K, V>[] wheel : wheels) {
+            for (int i = 0; i < BUCKETS; i++) {
+                Node<K, V> sentinel = new Node<>(null, null, 0L);
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                wheel[i] = sentinel;
+            }
+        }
+    }
+
+    void schedule(Node<K, V> node) {
+        long duration = node.expiresAt - time;
+        int level = 0;
+        while (level < SHIFTS.length - 1 && duration >= 1L << SHIFTS[level + 1]) {
+            level++;
+        }
+        Node<K, V> sentinel = wheels[level][(int) ((node.expiresAt >>> SHIFTS[level]) & MASK)];
+        node.prev = sentinel.prev;
+        node.next = sentinel;
+        sentinel.prev.next = node;
+        sentinel.prev = node;
+    }
+
+    void deschedule(Node<K, V> node) {
+        if (node.next != null) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+        }
+    }
+
+    /**
+     * Moves the clock to {@code nanos} and hands every entry found expired to the callback.
+     */
+    void advance(long nanos) {
+        long previous = time;
+        time = nanos;
+        for (int level = 0; level < SHIFTS.length; level++) {
+            long previousTicks = previous >>> SHIFTS[level];
+            long delta = (nanos >>> SHIFTS[level]) - previousTicks;
+            if (delta <= 0L) {
+                // coarser wheels tick even less often
+                return;
+            }
+            expire(level, previousTicks, delta);
+        }
+    }
+
+    private void expire(int level, long previousTicks, long delta) {
+        Node<K, V>[] wheel = wheels[level];
+        int start = delta >= BUCKETS ? 0 : (int) (previousTicks & MASK);
+        int end = delta >= BUCKETS ? BUCKETS : start + (int) delta + 1;
+        for (int i = start; i < end; i++) {
+            Node<K, V> sentinel = wheel[i & MASK];
+            Node<K, V> node = sentinel.next;
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            while (node != sentinel) {
+                Node<K, V> next = node.next;
+                node.prev = null;
+                node.next = null;
+                if (node.expiresAt - time <= 0L) {
+                    onExpire.accept(node);
+                } else {
+                    schedule(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long expiresAt;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        Node(K key, V value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
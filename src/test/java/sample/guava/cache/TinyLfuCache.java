@@ -0,0 +1,218 @@
+package sample.guava.cache;
+
+import com.google.common.cache.AbstractCache.SimpleStatsCounter;
+import com.google.common.cache.AbstractCache.StatsCounter;
+import com.google.common.cache.AbstractLoadingCache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Maps;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A size bounded {@link com.google.common.cache.LoadingCache} using the W-TinyLFU policy.
+ * <p>
+ * New entries land in a small LRU window (1% of the size). Entries evicted from the window have to compete
+ * with the LRU victim of the main space, and only the one that the {@link FrequencySketch} considers more
+ * popular is kept. The main space is a segmented LRU: entries hit a second time move from probation into
+ * the protected segment (80% of the main space). One-hit wonders of a scan therefore never push out
+ * hot entries, which is what happens to the plain LRU behind {@link com.google.common.cache.CacheBuilder#maximumSize(long)}.
+ * <p>
+ * Concurrent loads of the same key are shared, the policy itself is guarded by a single lock.
+ */
+public final class TinyLfuCache<K, V> extends AbstractLoadingCache<K, V> {
+    private final CacheLoader<? super K, V> loader;
+    private final StatsCounter statsCounter = new SimpleStatsCounter();
+    private final InFlightLoads<K, V> loads = new InFlightLoads<>(statsCounter);
+    private final Lock lock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final LinkedHashMap<K, V> window;
+    private final LinkedHashMap<K, V> probation;
+    private final LinkedHashMap<K, V> protectedSegment;
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final int protectedCapacity;
+
+    private TinyLfuCache(int maximumSize, CacheLoader<? super K, V> loader) {
+        checkArgument(maximumSize > 0, "maximumSize must be positive");
+        this.loader = checkNotNull(loader, "loader");
+        this.sketch = new FrequencySketch(maximumSize);
+        this.windowCapacity = Math.max(1, maximumSize / 100);
+        this.mainCapacity = maximumSize - windowCapacity;
+        this.protectedCapacity = mainCapacity * 4 / 5;
+        this.window = new LinkedHashMap<>(16, 0.75F, true);
+        this.probation = new LinkedHashMap<>(16, 0.75F, true);
+        this.protectedSegment = new LinkedHashMap<>(16, 0.75F, true);
+    }
+
+    public static <K, V> TinyLfuCache<K, V> create(int maximumSize, CacheLoader<? super K, V> loader) {
+        return new TinyLfuCache<>(maximumSize, loader);
+    }
+
+    @Override
+    public V getIfPresent(Object key) {
+        checkNotNull(key);
+        lock.lock();
+        try {
+            V value = lookup(key);
+            if (value == null) {
+                statsCounter.recordMisses(1);
+            } else {
+                statsCounter.recordHits(1);
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public V get(K key) throws ExecutionException {
+        return get(key, () -> loader.load(key));
+    }
+
+    @Override
+    public V get(K key, Callable<? extends V> valueLoader) throws ExecutionException {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        return loads.load(key, valueLoader, this::insert);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        lock.lock();
+        try {
+            sketch.increment(key);
+            insert(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * the access was already counted by the lookup that missed, so the sketch is left alone here
+     */
+    private void insert(K key, V value) {
+        lock.lock();
+        try {
+            if (window.containsKey(key)) {
+                window.put(key, value);
+            } else if (protectedSegment.containsKey(key)) {
+                protectedSegment.put(key, value);
+            } else if (probation.containsKey(key)) {
+                probation.put(key, value);
+            } else {
+                window.put(key, value);
+                evict();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidate(Object key) {
+        checkNotNull(key);
+        lock.lock();
+        try {
+            if (window.remove(key) == null && protectedSegment.remove(key) == null) {
+                probation.remove(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        lock.lock();
+        try {
+            return window.size() + probation.size() + protectedSegment.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    private V lookup(Object key) {
+        sketch.increment(key);
+        V value = window.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = protectedSegment.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = probation.remove(key);
+        if (value != null) {
+            promote(key, value);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void promote(Object key, V value) {
+        protectedSegment.put((K) key, value);
+        if (protectedSegment.size() > protectedCapacity) {
+            Map.Entry<K, V> demoted = pollEldest(protectedSegment);
+            probation.put(demoted.getKey(), demoted.getValue());
+        }
+    }
+
+    private void evict() {
+        if (window.size() <= windowCapacity) {
+            return;
+        }
+        Map.Entry<K, V> candidate = pollEldest(window);
+        if (probation.size() + protectedSegment.size() < mainCapacity) {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+        LinkedHashMap<K, V> victims = probation.isEmpty() ? protectedSegment : probation;
+        if (!victims.isEmpty()) {
+            K victim = victims.keySet().iterator().next();
+            if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim)) {
+                victims.remove(victim);
+                probation.put(candidate.getKey(), candidate.getValue());
+            }
+        }
+        statsCounter.recordEviction();
+    }
+
+    private static <K, V> Map.Entry<K, V> pollEldest(LinkedHashMap<K, V> segment) {
+        Iterator<Map.Entry<K, V>> iterator = segment.entrySet().iterator();
+        Map.Entry<K, V> eldest = iterator.next();
+        iterator.remove();
+        return Maps.immutableEntry(eldest.getKey(), eldest.getValue());
+    }
+}
@@ -0,0 +1,104 @@
+package sample.guava.cache;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TinyLfuCacheTest {
+    private final Logger log = LogManager.getLogger();
+
+    @Test
+    public void getUnchecked() {
+        CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+            @Override
+            public String load(String key) {
+                return key.toUpperCase();
+            }
+        };
+        LoadingCache<String, String> cache = TinyLfuCache.create(200, loader);
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.getUnchecked("simple test")).isEqualTo("SIMPLE TEST");
+        assertThat(cache.getIfPresent("simple test")).isEqualTo("SIMPLE TEST");
+        assertThat(cache.size()).isEqualTo(1);
+
+        cache.invalidate("simple test");
+        assertThat(cache.getIfPresent("simple test")).isNull();
+    }
+
+    @Test
+    public void evictBySize() {
+        LoadingCache<Integer, Integer> cache = TinyLfuCache.create(200, CacheLoader.from(key -> key));
+        for (int i = 0; i < 1000; i++) {
+            cache.getUnchecked(i);
+        }
+        assertThat(cache.size()).isEqualTo(200);
+        assertThat(cache.stats().evictionCount()).isEqualTo(800);
+    }
+
+    @Test(expected = InvalidCacheLoadException.class)
+    public void loaderReturnsNull() {
+        LoadingCache<String, String> cache = TinyLfuCache.create(200, CacheLoader.from(key -> null));
+        cache.getUnchecked("test");
+    }
+
+    @Test(expected = UncheckedExecutionException.class)
+    public void loaderThrows() {
+        LoadingCache<String, String> cache = TinyLfuCache.create(200, CacheLoader.from(key -> {
+            throw new IllegalArgumentException(key);
+        }));
+        cache.getUnchecked("test");
+    }
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        LoadingCache<String, String> cache = TinyLfuCache.create(200, new CacheLoader<String, String>() {
+            @Override
+            public String load(String key) throws InterruptedException {
+                loads.incrementAndGet();
+                release.await();
+                return key.toUpperCase();
+            }
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<String>> futures = ImmutableList.of(
+                pool.submit(() -> cache.getUnchecked("apple")),
+                pool.submit(() -> cache.getUnchecked("apple")),
+                pool.submit(() -> cache.getUnchecked("apple")),
+                pool.submit(() -> cache.getUnchecked("apple")));
+        TimeUnit.MILLISECONDS.sleep(200);
+        release.countDown();
+        for (Future<String> future : futures) {
+            assertThat(future.get()).isEqualTo("APPLE");
+        }
+        pool.shutdown();
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void scanResistance() {
+        int[] trace = HitRateSimulator.scanTrace(2000, 200000, 400, 1L);
+        CacheStats lru = HitRateSimulator.replay(HitRateSimulator.Policy.LRU, 200, trace);
+        CacheStats tinyLfu = HitRateSimulator.replay(HitRateSimulator.Policy.TINY_LFU, 200, trace);
+        log.info("lru hitRate: {}, tinyLfu hitRate: {}", lru.hitRate(), tinyLfu.hitRate());
+        assertThat(tinyLfu.requestCount()).isEqualTo(lru.requestCount());
+        assertThat(tinyLfu.hitRate()).isGreaterThan(lru.hitRate());
+    }
+}
@@ -0,0 +1,195 @@
+package sample.guava.cache;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Ticker;
+import com.google.common.cache.AbstractCache.SimpleStatsCounter;
+import com.google.common.cache.AbstractCache.StatsCounter;
+import com.google.common.cache.AbstractLoadingCache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link com.google.common.cache.LoadingCache} where every entry has its own time to live, chosen by the loader
+ * through {@link Expiring}, instead of the single duration of
+ * {@link com.google.common.cache.CacheBuilder#expireAfterWrite(long, TimeUnit)}.
+ * <p>
+ * Expired entries are found by a {@link TimingWheel} that every operation advances, so expiring millions of entries
+ * costs O(1) per entry. Reads never return an expired value, even if the wheel has not reached it yet.
+ * <p>
+ * Values without an expiration are not supported: {@link #put(Object, Object)} and
+ * {@link #get(Object, java.util.concurrent.Callable)} throw {@link UnsupportedOperationException}, use
+ * {@link #put(Object, Object, long, TimeUnit)} instead. Concurrent loads of the same key are shared, the entries
+ * are guarded by a single lock.
+ */
+public final class VariableExpiryCache<K, V> extends AbstractLoadingCache<K, V> {
+    private final CacheLoader<? super K, Expiring<V>> loader;
+    private final Ticker ticker;
+    private final StatsCounter statsCounter = new SimpleStatsCounter();
+    private final InFlightLoads<K, Expiring<V>> loads = new InFlightLoads<>(statsCounter);
+    private final Lock lock = new ReentrantLock();
+    private final Map<K, TimingWheel.Node<K, V>> entries = Maps.newHashMap();
+    private final TimingWheel<K, V> wheel;
+
+    private VariableExpiryCache(CacheLoader<? super K, Expiring<V>> loader, Ticker ticker) {
+        this.loader = checkNotNull(loader, "loader");
+        this.ticker = checkNotNull(ticker, "ticker");
+        this.wheel = new TimingWheel<>(ticker.read(), this::expire);
+    }
+
+    public static <K, V> VariableExpiryCache<K, V> create(CacheLoader<? super K, Expiring<V>> loader) {
+        return new VariableExpiryCache<>(loader, Ticker.systemTicker());
+    }
+
+    public static <K, V> VariableExpiryCache<K, V> create(CacheLoader<? super K, Expiring<V>> loader, Ticker ticker) {
+        return new VariableExpiryCache<>(loader, ticker);
+    }
+
+    @Override
+    public V getIfPresent(Object key) {
+        checkNotNull(key);
+        lock.lock();
+        try {
+            long now = ticker.read();
+            wheel.advance(now);
+            TimingWheel.Node<K, V> node = entries.get(key);
+            if (node == null || node.expiresAt - now <= 0L) {
+                statsCounter.recordMisses(1);
+                return null;
+            }
+            statsCounter.recordHits(1);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public V get(K key) throws ExecutionException {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        return loads.load(key, () -> loader.load(key), (k, loaded) -> put(k, loaded.value, loaded.nanos, TimeUnit.NANOSECONDS)).value;
+    }
+
+    /**
+     * Stores {@code value} until {@code duration} has passed, a duration of 0 expires it right away.
+     */
+    public void put(K key, V value, long duration, TimeUnit unit) {
+        checkNotNull(key);
+        checkNotNull(value);
+        checkArgument(duration >= 0, "duration must not be negative");
+        lock.lock();
+        try {
+            long now = ticker.read();
+            wheel.advance(now);
+            TimingWheel.Node<K, V> node = new TimingWheel.Node<>(key, value, now + unit.toNanos(duration));
+            TimingWheel.Node<K, V> replaced = entries.put(key, node);
+            if (replaced != null) {
+                wheel.deschedule(replaced);
+            }
+            wheel.schedule(node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidate(Object key) {
+        checkNotNull(key);
+        lock.lock();
+        try {
+            TimingWheel.Node<K, V> node = entries.remove(key);
+            if (node != null) {
+                wheel.deschedule(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.values().forEach(wheel::deschedule);
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of entries the timing wheel has not expired yet
+     */
+    @Override
+    public long size() {
+        lock.lock();
+        try {
+            wheel.advance(ticker.read());
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void cleanUp() {
+        lock.lock();
+        try {
+            wheel.advance(ticker.read());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return expired entries count as evictions, like they do for {@link com.google.common.cache.CacheBuilder}
+     */
+    @Override
+    public CacheStats stats() {
+        return statsCounter.snapshot();
+    }
+
+    private void expire(TimingWheel.Node<K, V> node) {
+        entries.remove(node.key, node);
+        statsCounter.recordEviction();
+    }
+
+    /**
+     * A loaded value together with its time to live.
+     */
+    public static final class Expiring<V> {
+        private final V value;
+        private final long nanos;
+
+        private Expiring(V value, long nanos) {
+            this.value = value;
+            this.nanos = nanos;
+        }
+
+        public static <V> Expiring<V> of(V value, long duration, TimeUnit unit) {
+            checkNotNull(value, "value");
+            checkArgument(duration >= 0, "duration must not be negative");
+            return new Expiring<>(value, unit.toNanos(duration));
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("value", value)
+                    .add("ttl", TimeUnit.NANOSECONDS.toMillis(nanos) + "ms")
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package sample.guava.cache;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheLoader;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class VariableExpiryCacheTest {
+    private final AtomicLong nanos = new AtomicLong(TimeUnit.DAYS.toNanos(1));
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+    // every key lives as many seconds as it has characters
+    private final CacheLoader<String, VariableExpiryCache.Expiring<String>> loader = new CacheLoader<String, VariableExpiryCache.Expiring<String>>() {
+        @Override
+        public VariableExpiryCache.Expiring<String> load(String key) {
+            return VariableExpiryCache.Expiring.of(key.toUpperCase(), key.length(), TimeUnit.SECONDS);
+        }
+    };
+
+    private void advance(long duration, TimeUnit unit) {
+        nanos.addAndGet(unit.toNanos(duration));
+    }
+
+    @Test
+    public void expirePerEntry() {
+        VariableExpiryCache<String, String> cache = VariableExpiryCache.create(loader, ticker);
+        cache.getUnchecked("a");
+        cache.getUnchecked("cat");
+        cache.getUnchecked("elephant");
+        assertThat(cache.size()).isEqualTo(3);
+
+        advance(1500, TimeUnit.MILLISECONDS);
+        assertThat(cache.getIfPresent("a")).isNull();
+        assertThat(cache.getIfPresent("cat")).isEqualTo("CAT");
+        assertThat(cache.size()).isEqualTo(2);
+
+        advance(2, TimeUnit.SECONDS);
+        assertThat(cache.size()).isEqualTo(1);
+        advance(5, TimeUnit.SECONDS);
+        assertThat(cache.size()).isZero();
+        assertThat(cache.stats().evictionCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void neverReturnExpiredValues() {
+        VariableExpiryCache<String, String> cache = VariableExpiryCache.create(loader, ticker);
+        cache.put("apple", "red", 10, TimeUnit.MILLISECONDS);
+        advance(10, TimeUnit.MILLISECONDS);
+        assertThat(cache.getIfPresent("apple")).isNull();
+        assertThat(cache.getUnchecked("apple")).isEqualTo("APPLE");
+    }
+
+    @Test
+    public void replaceAndInvalidate() {
+        VariableExpiryCache<String, String> cache = VariableExpiryCache.create(loader, ticker);
+        cache.put("apple", "red", 1, TimeUnit.SECONDS);
+        cache.put("apple", "green", 1, TimeUnit.HOURS);
+        cache.put("cat", "black", 1, TimeUnit.SECONDS);
+        cache.invalidate("cat");
+        advance(2, TimeUnit.SECONDS);
+        assertThat(cache.getIfPresent("apple")).isEqualTo("green");
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.stats().evictionCount()).isZero();
+        advance(1, TimeUnit.HOURS);
+        assertThat(cache.size()).isZero();
+        assertThatThrownBy(() -> cache.put("apple", "red")).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void expireAMillionEntries() {
+        VariableExpiryCache<Integer, Integer> cache = VariableExpiryCache.create(
+                CacheLoader.from(key -> VariableExpiryCache.Expiring.of(key, key, TimeUnit.MILLISECONDS)), ticker);
+        int entries = 1_000_000;
+        for (int i = 0; i < entries; i++) {
+            cache.getUnchecked(i);
+        }
+        // time to live goes up to ~17 minutes, walk half an hour in steps of a second
+        for (int step = 0; step < TimeUnit.MINUTES.toSeconds(30); step++) {
+            advance(1, TimeUnit.SECONDS);
+            cache.cleanUp();
+        }
+        assertThat(cache.size()).isZero();
+        assertThat(cache.stats().evictionCount()).isEqualTo(entries);
+    }
+}
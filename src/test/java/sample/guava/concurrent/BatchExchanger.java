@@ -0,0 +1,129 @@
+package sample.guava.concurrent;
+
+import java.util.Arrays;
+import java.util.concurrent.Exchanger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Double buffering over an {@link Exchanger}: each of the two {@link Side}s owns one pre-allocated {@link Batch},
+ * fills it and swaps it for the batch of the other side, which it then reads, clears and fills again, or rewrites in
+ * place and sends back. The two batches are all there is, a message costs an array store instead of a rendezvous and
+ * two thread handoffs, and nothing is allocated per message.
+ */
+public final class BatchExchanger<T> {
+    private final Exchanger<Batch<T>> exchanger = new Exchanger<>();
+    private final int capacity;
+    private final AtomicInteger sides = new AtomicInteger();
+
+    private BatchExchanger(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public static <T> BatchExchanger<T> create(int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        return new BatchExchanger<>(capacity);
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Each of both threads takes one side.
+     *
+     * @throws IllegalStateException if both sides were taken
+     */
+    public Side<T> newSide() {
+        checkState(this.sides.getAndIncrement() < 2, "both sides taken");
+        return new Side<>(this, new Batch<>(this.capacity));
+    }
+
+    /**
+     * Not thread safe, it belongs to one side at a time and the exchange hands it over.
+     */
+    public static final class Batch<T> {
+        private final Object[] elements;
+        private int size;
+
+        private Batch(int capacity) {
+            this.elements = new Object[capacity];
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        public boolean isFull() {
+            return this.size == this.elements.length;
+        }
+
+        /**
+         * @throws IllegalStateException if the batch is full
+         */
+        public void add(T element) {
+            checkState(!isFull(), "batch full");
+            this.elements[this.size++] = element;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            checkElementIndex(index, this.size);
+            return (T) this.elements[index];
+        }
+
+        public void set(int index, T element) {
+            checkElementIndex(index, this.size);
+            this.elements[index] = element;
+        }
+
+        public void clear() {
+            Arrays.fill(this.elements, 0, this.size, null);
+            this.size = 0;
+        }
+    }
+
+    public static final class Side<T> {
+        private final BatchExchanger<T> owner;
+        private Batch<T> batch;
+
+        private Side(BatchExchanger<T> owner, Batch<T> batch) {
+            this.owner = owner;
+            this.batch = batch;
+        }
+
+        /**
+         * @return the batch this side owns now, to fill or to read
+         */
+        public Batch<T> batch() {
+            return this.batch;
+        }
+
+        /**
+         * Hands the batch over to the other side, as it is, and waits for the batch of the other side.
+         *
+         * @return the batch of the other side, owned by this side from now on
+         */
+        public Batch<T> exchange() throws InterruptedException {
+            this.batch = this.owner.exchanger.exchange(this.batch);
+            return this.batch;
+        }
+
+        /**
+         * @throws TimeoutException if the other side did not exchange in time, this side keeps its batch
+         */
+        public Batch<T> exchange(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            this.batch = this.owner.exchanger.exchange(this.batch, timeout, unit);
+            return this.batch;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package sample.guava.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.Exchanger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages per second from a producer to a consumer thread, one message per {@link Exchanger#exchange(Object)} the
+ * way {@link Publisher} and {@link Talker} talk, against a {@link BatchExchanger} swapping batches of 1 to 4096. Every
+ * invocation sends {@value #MESSAGES} messages, the score is per message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchExchangerBenchmark {
+    private static final int MESSAGES = 4096;
+    private static final String MESSAGE = "message";
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void exchanger(SingleItem state) throws InterruptedException {
+        for (int i = 0; i < MESSAGES; i++) {
+            state.exchanger.exchange(MESSAGE);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void batchExchanger(Batched state) throws InterruptedException {
+        for (int sent = 0; sent < MESSAGES; ) {
+            BatchExchanger.Batch<String> batch = state.producer.batch();
+            batch.clear();
+            while (!batch.isFull() && sent < MESSAGES) {
+                batch.add(MESSAGE);
+                sent++;
+            }
+            state.producer.exchange();
+        }
+    }
+
+    /**
+     * A consumer thread answering every exchange until it is interrupted.
+     */
+    private abstract static class Consumer {
+        private Thread consumer;
+
+        @Setup
+        public void setUp() {
+            init();
+            this.consumer = new Thread(() -> {
+                try {
+                    while (true) {
+                        consume();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "consumer");
+            this.consumer.setDaemon(true);
+            this.consumer.start();
+        }
+
+        @TearDown
+        public void tearDown() throws InterruptedException {
+            this.consumer.interrupt();
+            this.consumer.join();
+        }
+
+        /**
+         * Creates what the consumer uses, before its thread starts.
+         */
+        void init() {
+        }
+
+        abstract void consume() throws InterruptedException;
+    }
+
+    @State(Scope.Benchmark)
+    public static class SingleItem extends Consumer {
+        private final Exchanger<String> exchanger = new Exchanger<>();
+
+        @Override
+        void consume() throws InterruptedException {
+            this.exchanger.exchange(null);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Batched extends Consumer {
+        @Param({"1", "8", "64", "512", "4096"})
+        private int batchSize;
+
+        private BatchExchanger.Side<String> producer;
+        private BatchExchanger.Side<String> side;
+
+        @Override
+        void init() {
+            BatchExchanger<String> batches = BatchExchanger.create(this.batchSize);
+            this.producer = batches.newSide();
+            this.side = batches.newSide();
+        }
+
+        @Override
+        void consume() throws InterruptedException {
+            this.side.exchange().clear();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BatchExchangerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,87 @@
+package sample.guava.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Executors for tasks that spend their time sleeping or blocked on latches, exchangers and barriers, like
+ * {@link Horse}, {@link Activity}, {@link Publisher} and {@link Talker}. A platform thread costs such a task a stack
+ * and a kernel thread while it waits, a virtual thread only the heap its frames need.
+ * <p>
+ * Virtual threads need JDK 21, the build still targets older JDKs, so {@link Mode#VIRTUAL} looks up
+ * {@code Executors.newVirtualThreadPerTaskExecutor()} reflectively. The samples use {@link #newExecutor()}, which
+ * takes the mode from the {@value #MODE_PROPERTY} system property, e.g. {@code mvn test -Dsample.guava.executor=VIRTUAL}.
+ */
+public final class BlockingExecutors {
+    public static final String MODE_PROPERTY = "sample.guava.executor";
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+    private BlockingExecutors() {
+    }
+
+    public enum Mode {
+        /**
+         * A cached pool of platform threads, what the samples used so far.
+         */
+        PLATFORM {
+            @Override
+            ExecutorService create() {
+                return Executors.newCachedThreadPool();
+            }
+        },
+        /**
+         * A new virtual thread for every task.
+         */
+        VIRTUAL {
+            @Override
+            ExecutorService create() {
+                checkState(isVirtualAvailable(), "virtual threads need JDK 21, running %s",
+                        System.getProperty("java.version"));
+                try {
+                    return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+        abstract ExecutorService create();
+    }
+
+    public static boolean isVirtualAvailable() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @return an executor of the {@link #configuredMode()}
+     */
+    public static ExecutorService newExecutor() {
+        return newExecutor(configuredMode());
+    }
+
+    /**
+     * @throws IllegalStateException for {@link Mode#VIRTUAL} before JDK 21
+     */
+    public static ExecutorService newExecutor(Mode mode) {
+        return mode.create();
+    }
+
+    /**
+     * @return the mode named by the {@value #MODE_PROPERTY} system property, {@link Mode#PLATFORM} if it is not set
+     */
+    public static Mode configuredMode() {
+        return Mode.valueOf(System.getProperty(MODE_PROPERTY, Mode.PLATFORM.name()));
+    }
+
+    private static Method findVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
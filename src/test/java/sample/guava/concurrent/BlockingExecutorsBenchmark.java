@@ -0,0 +1,147 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.Lists;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completion time of 100k concurrent {@link Horse}s, and of as many activities waiting on one latch like
+ * {@link Activity} does, on the platform thread pools the samples use against virtual threads. Every fork logs its
+ * peak thread count and resident memory, the footprint of the threads that the time alone does not show.
+ * <p>
+ * {@link Executors#newCachedThreadPool()} starts a platform thread per waiting task, 100k of them may exceed the
+ * thread limit of the OS, the fixed pool bounds them but runs the tasks in waves. {@code VIRTUAL} needs JDK 21,
+ * which also activates the {@code jdk21} profile of the build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xss256k")
+public class BlockingExecutorsBenchmark {
+    private final Logger log = LogManager.getLogger(this.getClass().getName());
+
+    @Param({"100000"})
+    private int tasks;
+
+    @Param
+    private Pool pool;
+
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() {
+        executor = pool.create();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, IOException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        log.info("{} {}: peak threads {}, {}", pool, tasks, ManagementFactory.getThreadMXBean().getPeakThreadCount(),
+                residentMemory());
+    }
+
+    /**
+     * Horses sleep 10ms per step, 5 steps each.
+     */
+    @Benchmark
+    public int horses() throws Exception {
+        ExecutorCompletionService<Horse> race = new ExecutorCompletionService<>(executor);
+        for (int i = 0; i < tasks; i++) {
+            race.submit(new Horse("Horse" + i, 100, 500L));
+        }
+        int finished = 0;
+        for (int i = 0; i < tasks; i++) {
+            race.take().get();
+            finished++;
+        }
+        return finished;
+    }
+
+    /**
+     * Activities all wait for the start latch, then take 50ms.
+     */
+    @Benchmark
+    public void activities() throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch end = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    end.countDown();
+                }
+            });
+        }
+        start.countDown();
+        end.await();
+    }
+
+    private static String residentMemory() throws IOException {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.exists(status)) {
+            return "resident memory unknown";
+        }
+        List<String> lines = Lists.newArrayList();
+        for (String line : Files.readAllLines(status, StandardCharsets.US_ASCII)) {
+            if (line.startsWith("VmHWM") || line.startsWith("VmRSS")) {
+                lines.add(line.replaceAll("\\s+", " "));
+            }
+        }
+        return String.join(", ", lines);
+    }
+
+    public enum Pool {
+        PLATFORM_CACHED {
+            @Override
+            ExecutorService create() {
+                return BlockingExecutors.newExecutor(BlockingExecutors.Mode.PLATFORM);
+            }
+        },
+        PLATFORM_FIXED {
+            @Override
+            ExecutorService create() {
+                return Executors.newFixedThreadPool(1000);
+            }
+        },
+        VIRTUAL {
+            @Override
+            ExecutorService create() {
+                return BlockingExecutors.newExecutor(BlockingExecutors.Mode.VIRTUAL);
+            }
+        };
+
+        abstract ExecutorService create();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BlockingExecutorsBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,155 @@
+package sample.guava.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link BoundedList}, {@link RingBufferDeque} and {@link LinkedBlockingDeque} when every thread
+ * adds an element at one end and removes one at the other.
+ * <p>
+ * The capacity exceeds the number of threads so that nobody waits for room, this measures the cost of the adds
+ * and removes themselves and how they scale, run {@link #main(String[])} for 1, 4 and 16 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BoundedDequeBenchmark {
+    private static final int LIMIT = 1024;
+
+    @Param
+    private Implementation implementation;
+
+    private Handoff<Integer> deque;
+
+    @Setup
+    public void setUp() {
+        deque = implementation.create();
+    }
+
+    @Benchmark
+    public Integer addLastRemoveFirst() throws InterruptedException {
+        deque.addLast(1);
+        return deque.removeFirst();
+    }
+
+    @Benchmark
+    public Integer addFirstRemoveLast() throws InterruptedException {
+        deque.addFirst(1);
+        return deque.removeLast();
+    }
+
+    interface Handoff<E> {
+        void addFirst(E element) throws InterruptedException;
+
+        void addLast(E element) throws InterruptedException;
+
+        E removeFirst() throws InterruptedException;
+
+        E removeLast() throws InterruptedException;
+    }
+
+    public enum Implementation {
+        BOUNDED_LIST {
+            @Override
+            <E> Handoff<E> create() {
+                BoundedList<E> list = new BoundedList<>(LIMIT);
+                return new Handoff<E>() {
+                    @Override
+                    public void addFirst(E element) throws InterruptedException {
+                        list.addFirst(element);
+                    }
+
+                    @Override
+                    public void addLast(E element) throws InterruptedException {
+                        list.addLast(element);
+                    }
+
+                    @Override
+                    public E removeFirst() throws InterruptedException {
+                        return list.removeFirst();
+                    }
+
+                    @Override
+                    public E removeLast() throws InterruptedException {
+                        return list.removeLast();
+                    }
+                };
+            }
+        },
+        RING_BUFFER_DEQUE {
+            @Override
+            <E> Handoff<E> create() {
+                RingBufferDeque<E> ring = new RingBufferDeque<>(LIMIT);
+                return new Handoff<E>() {
+                    @Override
+                    public void addFirst(E element) throws InterruptedException {
+                        ring.addFirst(element);
+                    }
+
+                    @Override
+                    public void addLast(E element) throws InterruptedException {
+                        ring.addLast(element);
+                    }
+
+                    @Override
+                    public E removeFirst() throws InterruptedException {
+                        return ring.removeFirst();
+                    }
+
+                    @Override
+                    public E removeLast() throws InterruptedException {
+                        return ring.removeLast();
+                    }
+                };
+            }
+        },
+        LINKED_BLOCKING_DEQUE {
+            @Override
+            <E> Handoff<E> create() {
+                LinkedBlockingDeque<E> linked = new LinkedBlockingDeque<>(LIMIT);
+                return new Handoff<E>() {
+                    @Override
+                    public void addFirst(E element) throws InterruptedException {
+                        linked.putFirst(element);
+                    }
+
+                    @Override
+                    public void addLast(E element) throws InterruptedException {
+                        linked.putLast(element);
+                    }
+
+                    @Override
+                    public E removeFirst() throws InterruptedException {
+                        return linked.takeFirst();
+                    }
+
+                    @Override
+                    public E removeLast() throws InterruptedException {
+                        return linked.takeLast();
+                    }
+                };
+            }
+        };
+
+        abstract <E> Handoff<E> create();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4, 16}) {
+            Options options = new OptionsBuilder()
+                    .include(BoundedDequeBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -2,10 +2,14 @@ package sample.guava.concurrent;
 
 import com.google.common.collect.Lists;
 
+import java.util.Collection;
 import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 public class BoundedList<E> {
     private final int limit;
@@ -13,6 +17,11 @@ public class BoundedList<E> {
     private final ReadWriteLock readWriteLock;
     private final Condition notEmpty;
     private final Condition notFull;
+    /**
+     * Versions the deque for optimistic peeks, write locked around every change while holding the write lock of
+     * {@link #readWriteLock}, but never while awaiting a condition.
+     */
+    private final StampedLock versions = new StampedLock();
 
 
     public BoundedList() {
@@ -32,7 +41,12 @@ public class BoundedList<E> {
         try {
             while (this.deque.size() == limit)
                 this.notFull.await();
-            this.deque.addFirst(element);
+            long stamp = this.versions.writeLock();
+            try {
+                this.deque.addFirst(element);
+            } finally {
+                this.versions.unlockWrite(stamp);
+            }
             this.notEmpty.signal();
         } finally {
             this.readWriteLock.writeLock().unlock();
@@ -44,7 +58,12 @@ public class BoundedList<E> {
         try {
             while (this.deque.size() == limit)
                 this.notFull.await();
-            this.deque.addLast(element);
+            long stamp = this.versions.writeLock();
+            try {
+                this.deque.addLast(element);
+            } finally {
+                this.versions.unlockWrite(stamp);
+            }
             this.notEmpty.signal();
         } finally {
             this.readWriteLock.writeLock().unlock();
@@ -56,7 +75,13 @@ public class BoundedList<E> {
         try {
             while (this.deque.size() == 0)
                 this.notEmpty.await();
-            E element = this.deque.removeFirst();
+            E element;
+            long stamp = this.versions.writeLock();
+            try {
+                element = this.deque.removeFirst();
+            } finally {
+                this.versions.unlockWrite(stamp);
+            }
             this.notFull.signal();
             return element;
         } finally {
@@ -69,7 +94,13 @@ public class BoundedList<E> {
         try {
             while (this.deque.size() == 0)
                 this.notEmpty.await();
-            E element = this.deque.removeLast();
+            E element;
+            long stamp = this.versions.writeLock();
+            try {
+                element = this.deque.removeLast();
+            } finally {
+                this.versions.unlockWrite(stamp);
+            }
             this.notFull.signal();
             return element;
         } finally {
@@ -77,10 +108,97 @@ public class BoundedList<E> {
         }
     }
 
+    /**
+     * Adds all elements at the end, in iteration order. Waits for room whenever the list is full, waking up removers
+     * once for every run of elements that fit.
+     * <p>
+     * Not atomic: removers may take the first elements before the last ones fit. If the thread is interrupted while
+     * it waits for room, the elements added so far stay in the list and the rest are not added.
+     */
+    public void addAllLast(Collection<? extends E> elements) throws InterruptedException {
+        Iterator<? extends E> iterator = elements.iterator();
+        this.readWriteLock.writeLock().lock();
+        try {
+            while (iterator.hasNext()) {
+                while (this.deque.size() == limit)
+                    this.notFull.await();
+                long stamp = this.versions.writeLock();
+                try {
+                    while (iterator.hasNext() && this.deque.size() < limit)
+                        this.deque.addLast(iterator.next());
+                } finally {
+                    this.versions.unlockWrite(stamp);
+                }
+                this.notEmpty.signalAll();
+            }
+        } finally {
+            this.readWriteLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves up to {@code maxElements} from the front to {@code target} without waiting. An element {@code target}
+     * throws on stays in the list, the elements moved before it are gone.
+     *
+     * @return the number of elements moved
+     */
+    public int drainFirst(Collection<? super E> target, int maxElements) {
+        this.readWriteLock.writeLock().lock();
+        try {
+            return drain(target, maxElements);
+        } finally {
+            this.readWriteLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Like {@link #drainFirst(Collection, int)}, but waits up to {@code timeout} for the list to hold at least one
+     * element.
+     *
+     * @return the number of elements moved, 0 if the timeout elapsed
+     */
+    public int drainTo(Collection<? super E> target, int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        this.readWriteLock.writeLock().lockInterruptibly();
+        try {
+            while (this.deque.isEmpty()) {
+                if (nanos <= 0L)
+                    return 0;
+                nanos = this.notEmpty.awaitNanos(nanos);
+            }
+            return drain(target, maxElements);
+        } finally {
+            this.readWriteLock.writeLock().unlock();
+        }
+    }
+
+    private int drain(Collection<? super E> target, int maxElements) {
+        int drained = 0;
+        long stamp = this.versions.writeLock();
+        try {
+            while (drained < maxElements && !this.deque.isEmpty()) {
+                target.add(this.deque.peekFirst());
+                this.deque.removeFirst();
+                drained++;
+            }
+        } finally {
+            this.versions.unlockWrite(stamp);
+            if (drained > 0)
+                this.notFull.signalAll();
+        }
+        return drained;
+    }
+
     public boolean remove(E element) throws InterruptedException {
         this.readWriteLock.writeLock().lock();
         try {
-            boolean isRemoved = this.deque.remove(element);
+            boolean isRemoved;
+            long stamp = this.versions.writeLock();
+            try {
+                isRemoved = this.deque.remove(element);
+            } finally {
+                this.versions.unlockWrite(stamp);
+            }
             if (isRemoved)
                 this.notFull.signal();
             return isRemoved;
@@ -89,7 +207,18 @@ public class BoundedList<E> {
         }
     }
 
+    /**
+     * Reads optimistically without writing to shared memory, takes the read lock only if a writer changed the list
+     * meanwhile. {@link java.util.LinkedList#peekFirst()} reads two fields and cannot fail on a list changing
+     * underneath, its result is only used if the version did not change.
+     */
     public E peekFirst() throws InterruptedException {
+        long stamp = this.versions.tryOptimisticRead();
+        if (stamp != 0L) {
+            E element = this.deque.peekFirst();
+            if (this.versions.validate(stamp))
+                return element;
+        }
         this.readWriteLock.readLock().lock();
         try {
             return this.deque.peekFirst();
@@ -98,7 +227,16 @@ public class BoundedList<E> {
         }
     }
 
+    /**
+     * Like {@link #peekFirst()}.
+     */
     public E peekLast() throws InterruptedException {
+        long stamp = this.versions.tryOptimisticRead();
+        if (stamp != 0L) {
+            E element = this.deque.peekLast();
+            if (this.versions.validate(stamp))
+                return element;
+        }
         this.readWriteLock.readLock().lock();
         try {
             return this.deque.peekLast();
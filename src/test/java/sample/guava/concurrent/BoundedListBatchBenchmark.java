@@ -0,0 +1,77 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.Lists;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves {@code batchSize} elements through a {@link BoundedList}, one element per lock acquisition against
+ * {@link BoundedList#addAllLast(java.util.Collection)} and {@link BoundedList#drainFirst(java.util.Collection, int)}.
+ * <p>
+ * Every thread adds a batch and removes a batch, the limit leaves room for all threads so nobody waits. Scores
+ * are batches per microsecond, compare the two benchmarks at the same batch size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class BoundedListBatchBenchmark {
+    private static final int LIMIT = 1 << 16;
+
+    @Param({"1", "16", "256"})
+    private int batchSize;
+
+    private BoundedList<Integer> list;
+    private List<Integer> batch;
+
+    @Setup
+    public void setUp() {
+        list = new BoundedList<>(LIMIT);
+        batch = Collections.nCopies(batchSize, 1);
+    }
+
+    @State(Scope.Thread)
+    public static class Buffer {
+        private final List<Integer> elements = Lists.newArrayListWithCapacity(256);
+    }
+
+    @Benchmark
+    public int oneByOne(Buffer buffer) throws InterruptedException {
+        buffer.elements.clear();
+        for (Integer element : batch) {
+            list.addLast(element);
+        }
+        for (int i = 0; i < batchSize; i++) {
+            buffer.elements.add(list.removeFirst());
+        }
+        return buffer.elements.size();
+    }
+
+    @Benchmark
+    public int batched(Buffer buffer) throws InterruptedException {
+        buffer.elements.clear();
+        list.addAllLast(batch);
+        int drained = 0;
+        while (drained < batchSize) {
+            drained += list.drainFirst(buffer.elements, batchSize - drained);
+        }
+        return drained;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BoundedListBatchBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,104 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BoundedListTest {
+
+    @Test
+    public void addAllAndDrain() throws InterruptedException {
+        BoundedList<Integer> list = new BoundedList<>(10);
+        list.addAllLast(ImmutableList.of(1, 2, 3, 4, 5));
+        List<Integer> drained = Lists.newArrayList();
+        assertThat(list.drainFirst(drained, 3)).isEqualTo(3);
+        assertThat(drained).containsExactly(1, 2, 3);
+        assertThat(list.drainFirst(drained, 10)).isEqualTo(2);
+        assertThat(drained).containsExactly(1, 2, 3, 4, 5);
+        assertThat(list.drainFirst(drained, 10)).isZero();
+    }
+
+    @Test
+    public void drainKeepsTheElementTargetRefuses() throws InterruptedException {
+        BoundedList<Integer> list = new BoundedList<>(10);
+        list.addAllLast(ImmutableList.of(1, 2, 3));
+        List<Integer> target = Lists.newArrayList();
+        List<Integer> refusingTwo = new AbstractList<Integer>() {
+            @Override
+            public boolean add(Integer element) {
+                if (element == 2)
+                    throw new IllegalArgumentException("full");
+                return target.add(element);
+            }
+
+            @Override
+            public Integer get(int index) {
+                return target.get(index);
+            }
+
+            @Override
+            public int size() {
+                return target.size();
+            }
+        };
+        assertThatThrownBy(() -> list.drainFirst(refusingTwo, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(target).containsExactly(1);
+        assertThat(list.drainFirst(target, 10)).isEqualTo(2);
+        assertThat(target).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    public void addAllWaitsForRoom() throws Exception {
+        BoundedList<Integer> list = new BoundedList<>(4);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<?> adding = pool.submit(() -> {
+            list.addAllLast(ImmutableList.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10));
+            return null;
+        });
+        List<Integer> drained = Lists.newArrayList();
+        while (drained.size() < 10) {
+            list.drainTo(drained, 3, 1, TimeUnit.SECONDS);
+        }
+        adding.get(1, TimeUnit.SECONDS);
+        assertThat(drained).containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        pool.shutdown();
+    }
+
+    @Test
+    public void drainToTimesOut() throws InterruptedException {
+        BoundedList<Integer> list = new BoundedList<>();
+        long start = System.nanoTime();
+        assertThat(list.drainTo(Lists.newArrayList(), 10, 50, TimeUnit.MILLISECONDS)).isZero();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void peeksSeeConsistentEnds() throws Exception {
+        BoundedList<String> list = new BoundedList<>(4);
+        list.addLast("first");
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<?> writing = pool.submit(() -> {
+            for (int i = 0; i < 100_000; i++) {
+                list.addLast("last");
+                list.removeLast();
+            }
+            return null;
+        });
+        while (!writing.isDone()) {
+            assertThat(list.peekFirst()).isEqualTo("first");
+            assertThat(list.peekLast()).isIn("first", "last");
+        }
+        writing.get();
+        pool.shutdown();
+    }
+}
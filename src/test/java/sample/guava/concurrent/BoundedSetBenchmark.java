@@ -0,0 +1,76 @@
+package sample.guava.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the copy on write {@link BoundedSet} against {@link StripedBoundedSet}, half full, up to a capacity
+ * of 100k. Each operation looks up a random element, then adds one and removes it again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class BoundedSetBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int capacity;
+
+    @Param
+    private Implementation implementation;
+
+    private Set<Integer> set;
+
+    @Setup
+    public void setUp() {
+        set = implementation.create(capacity);
+        for (int i = 0; i < capacity / 2; i++) {
+            set.add(i);
+        }
+    }
+
+    @Benchmark
+    public boolean containsAddRemove() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean found = set.contains(random.nextInt(capacity));
+        Integer element = capacity / 2 + random.nextInt(capacity / 2);
+        if (set.add(element)) {
+            set.remove(element);
+        }
+        return found;
+    }
+
+    public enum Implementation {
+        COPY_ON_WRITE {
+            @Override
+            Set<Integer> create(int capacity) {
+                return new BoundedSet<>(capacity);
+            }
+        },
+        STRIPED {
+            @Override
+            Set<Integer> create(int capacity) {
+                return new StripedBoundedSet<>(capacity);
+            }
+        };
+
+        abstract Set<Integer> create(int capacity);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BoundedSetBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -27,7 +27,7 @@ public class CompletionServiceTest {
     public void start() {
         this.random = new Random();
         this.horses = Lists.newArrayList();
-        this.pool = Executors.newCachedThreadPool();
+        this.pool = BlockingExecutors.newExecutor();
     }
 
     @Test
@@ -29,7 +29,7 @@ public class CountDownLatchTest {
     @Test
     public void testLatchSchedule() {
         List<Activity> activities = ImmutableList.of(ef, de, ce, be, dc, bc, ad, ab);
-        ExecutorService pool = Executors.newCachedThreadPool();
+        ExecutorService pool = BlockingExecutors.newExecutor();
         for (Activity activity : activities) {
             pool.execute(activity);
         }
@@ -58,6 +58,31 @@ public class CountDownLatchTest {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * The same network without latches, an activity only starts once its predecessors are done.
+     */
+    @Test
+    public void testScheduleWithTaskGraph() throws Exception {
+        TaskGraph<String> graph = TaskGraph.<String>builder()
+                .add("A-B", 1000, new Activity("A-B", 1000, null, null))
+                .add("A-D", 2000, new Activity("A-D", 2000, null, null))
+                .add("B-C", 2000, new Activity("B-C", 2000, null, null), "A-B")
+                .add("D-C", 1000, new Activity("D-C", 1000, null, null), "A-D")
+                .add("B-E", 3000, new Activity("B-E", 3000, null, null), "A-B")
+                .add("C-E", 2000, new Activity("C-E", 2000, null, null), "B-C", "D-C")
+                .add("D-E", 4000, new Activity("D-E", 4000, null, null), "A-D")
+                .add("E-F", 3000, new Activity("E-F", 3000, null, null), "B-E", "C-E", "D-E")
+                .build();
+        log.info("Planned: {}, slack {}", graph.plan(), graph.plan().slacks());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TaskGraph.Plan<String> measured = graph.execute(pool).get(15, TimeUnit.SECONDS);
+            log.info("Measured: {}", measured);
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
 
 final class Activity implements Runnable {
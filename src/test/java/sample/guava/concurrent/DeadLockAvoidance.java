@@ -19,28 +19,29 @@ import java.util.concurrent.locks.ReentrantLock;
 
 public class DeadLockAvoidance {
     private final Logger log = LogManager.getLogger(this.getClass().getName());
-    private static AtomicLong counter;
+    private static StripedCounter counter;
     private static ExecutorService pool;
     private Account from, to;
-    private Transfer transfer;
+    private TransferEngine transfer;
 
     @BeforeClass
     public static void init() {
         pool = Executors.newCachedThreadPool();
-        counter = new AtomicLong(0);
+        counter = new StripedCounter();
     }
 
     @Before
     public void setUp() {
         this.from = new Account(9999L);
         this.to = new Account(0L);
-        this.transfer = Transfer.getInstance();
+        this.transfer = new TransferEngine();
     }
 
     @After
     public void tearDown() throws InterruptedException {
         pool.shutdown();
-        this.log.info(counter.get() + " transactions completed.");
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        this.log.info(counter.sum() + " transactions completed.");
         this.log.info("from.balance == " + from.getBalance() + ", to.balance == " + to.getBalance());
     }
 
@@ -50,17 +51,12 @@ public class DeadLockAvoidance {
             pool.execute(new Runnable() {
                 @Override
                 public void run() {
-                    boolean successful = false;
                     try {
-                        successful = transfer.transfer(from, to, 1L, TimeUnit.MILLISECONDS, 1L);
+                        transfer.transfer(from, to, 1L);
+                        counter.increment();
                     } catch (InsufficientFundsException | InterruptedException e) {
                         log.catching(Level.WARN, e);
                     }
-                    if (successful) {
-                        counter.incrementAndGet();
-                    } else {
-                        log.warn("transfer failed.");
-                    }
                 }
             });
         }
@@ -113,29 +109,51 @@ final class Transfer {
 }
 
 
+/**
+ * The balance is only changed while the account lock is held, so it never sees contending writers, an
+ * {@link AtomicLong} lets {@link #getBalance()} read it without the lock.
+ * <p>
+ * The lock is fair, threads blocking for it in {@link TransferEngine} get it in arrival order. The id orders the locks
+ * of different accounts.
+ */
 final class Account {
+    private static final AtomicLong IDS = new AtomicLong();
+    private final long id = IDS.getAndIncrement();
     private final AtomicLong balance;
     private final Lock lock;
 
     public Account(long balance) {
-        this.lock = new ReentrantLock();
+        this.lock = new ReentrantLock(true);
         this.balance = new AtomicLong(balance);
     }
 
+    public long getId() {
+        return id;
+    }
+
     public Lock getLock() {
         return lock;
     }
 
+    /**
+     * Does not take the account lock.
+     */
     public long getBalance() {
         return balance.get();
     }
 
-    public long withdraw(long amount) {
-        return this.balance.addAndGet(-amount);
+    /**
+     * Must hold the account lock.
+     */
+    public void withdraw(long amount) {
+        this.balance.addAndGet(-amount);
     }
 
-    public long deposit(long amount) {
-        return this.balance.addAndGet(amount);
+    /**
+     * Must hold the account lock.
+     */
+    public void deposit(long amount) {
+        this.balance.addAndGet(amount);
     }
 }
 
@@ -2,6 +2,7 @@ package sample.guava.concurrent;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -9,10 +10,13 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.*;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 public class ExchangerTest {
     private final Logger log = LogManager.getLogger();
     private Map<String, String> map;
@@ -36,12 +40,25 @@ public class ExchangerTest {
 
     @Test
     public void testExchanger() throws InterruptedException {
-        ExecutorService pool = Executors.newFixedThreadPool(2);
+        ExecutorService pool = BlockingExecutors.newExecutor();
         pool.execute(new Publisher(exchanger, map));
         pool.execute(new Talker(exchanger, map));
 
         pool.awaitTermination(1000, TimeUnit.MILLISECONDS);
     }
+
+    @Test
+    public void testBatchExchanger() throws InterruptedException {
+        BatchExchanger<String> batches = BatchExchanger.create(4);
+        BatchPublisher publisher = new BatchPublisher(batches, map);
+        ExecutorService pool = BlockingExecutors.newExecutor();
+        pool.execute(publisher);
+        pool.execute(new BatchTalker(batches, map));
+        pool.shutdown();
+
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(publisher.getAnswered()).isEqualTo(map.size());
+    }
 }
 
 final class Publisher implements Runnable {
@@ -113,3 +130,82 @@ final class Talker implements Runnable {
         log.debug("Talker exit.");
     }
 }
+
+/**
+ * The {@link Publisher} sending a batch of keys per exchange, it gets the values of the previous batch back.
+ */
+final class BatchPublisher implements Runnable {
+    private final Logger log = LogManager.getLogger(this.getClass().getName());
+    private final BatchExchanger.Side<String> side;
+    private final List<String> keys;
+    private volatile int answered;
+
+    public BatchPublisher(BatchExchanger<String> exchanger, Map<String, String> map) {
+        this.side = exchanger.newSide();
+        this.keys = ImmutableList.copyOf(map.keySet());
+    }
+
+    /**
+     * @return how many keys the talker answered
+     */
+    public int getAnswered() {
+        return this.answered;
+    }
+
+    @Override
+    public void run() {
+        int sent = 0;
+        int answered = 0;
+        boolean isLast = false;
+        while (!isLast) {
+            BatchExchanger.Batch<String> batch = this.side.batch();
+            batch.clear();
+            while (!batch.isFull() && sent < this.keys.size()) {
+                batch.add(this.keys.get(sent++));
+            }
+            // an empty batch tells the talker to stop, it collects the last values
+            isLast = batch.isEmpty();
+            try {
+                batch = this.side.exchange(1, TimeUnit.SECONDS);
+            } catch (InterruptedException | TimeoutException e) {
+                break;
+            }
+            for (int i = 0; i < batch.size(); i++, answered++) {
+                if (batch.get(i) != null)
+                    this.log.info("{}={}", this.keys.get(answered), batch.get(i));
+            }
+        }
+        this.answered = answered;
+        log.debug("Publisher exit.");
+    }
+}
+
+/**
+ * The {@link Talker} replacing every key of a batch by its value in place and sending the batch back.
+ */
+final class BatchTalker implements Runnable {
+    private final Logger log = LogManager.getLogger(this.getClass().getName());
+    private final BatchExchanger.Side<String> side;
+    private final Map<String, String> map;
+
+    public BatchTalker(BatchExchanger<String> exchanger, Map<String, String> map) {
+        this.side = exchanger.newSide();
+        this.map = map;
+    }
+
+    @Override
+    public void run() {
+        BatchExchanger.Batch<String> batch;
+        do {
+            try {
+                batch = this.side.exchange(1, TimeUnit.SECONDS);
+            } catch (InterruptedException | TimeoutException e) {
+                break;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.set(i, this.map.get(batch.get(i)));
+            }
+        } while (!batch.isEmpty());
+        log.debug("Talker exit.");
+    }
+}
@@ -0,0 +1,40 @@
+package sample.guava.concurrent;
+
+import sample.guava.cache.LatencyHistogram;
+
+/**
+ * Records latencies into a fixed set of {@link LatencyHistogram}s picked by thread id, like the cells of
+ * {@link StripedCounter}, so that recording threads rarely contend on the same counters. Snapshots merge the stripes
+ * into one copy, their cost and the memory of the recorder do not grow with the number of threads that ever recorded.
+ */
+public final class LatencyRecorder {
+    private final LatencyHistogram[] stripes;
+    private final int mask;
+
+    public LatencyRecorder() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param stripes rounded up to a power of two
+     */
+    public LatencyRecorder(int stripes) {
+        int count = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.mask = count - 1;
+        this.stripes = new LatencyHistogram[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(long nanos) {
+        this.stripes[(int) StripedCounter.mix(Thread.currentThread().getId()) & this.mask].record(nanos);
+    }
+
+    /**
+     * @return all values recorded so far, by any thread
+     */
+    public LatencyHistogram.Snapshot snapshot() {
+        return LatencyHistogram.snapshotOf(this.stripes);
+    }
+}
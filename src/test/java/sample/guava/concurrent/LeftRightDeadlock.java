@@ -11,7 +11,6 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 @Ignore
 public class LeftRightDeadlock {
@@ -80,10 +79,14 @@ public class LeftRightDeadlock {
     }
 }
 
+/**
+ * The {@link LockProfiler} reports the left/right cycle and the long holds, the threads only give up.
+ */
 final class ReentrantDeadLock {
     private final Logger log = LogManager.getLogger(this.getClass().getName());
-    private final Lock left = new ReentrantLock();
-    private final Lock right = new ReentrantLock();
+    private final LockProfiler profiler = LockProfiler.create(1, TimeUnit.SECONDS, LockProfiler.Reporter.log4j());
+    private final Lock left = profiler.newLock("left");
+    private final Lock right = profiler.newLock("right");
 
     public void leftRight() throws InterruptedException {
         if (left.tryLock()) {
@@ -0,0 +1,224 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Creates {@link ProfiledLock}s and watches how they are used together: whenever a thread takes a lock while holding
+ * others, the profiler records that they are taken in this order. An order that closes a cycle, the left and right
+ * locks of {@link LeftRightDeadlock} taken in both orders, is a deadlock waiting to happen, the {@link Reporter} hears
+ * about it the first time, also when the threads did not deadlock this time. Nothing is stopped or refused.
+ * <p>
+ * Once {@link #start(long, TimeUnit, ScheduledExecutorService) started}, a watchdog reports locks held longer than
+ * the threshold with the current stack of their owner, once per hold, so a thread stuck or deadlocked while holding
+ * a lock shows where it is stuck. Releases of locks held that long are reported as well, with the stack of the
+ * releasing thread, which is still in the code that held the lock.
+ * <p>
+ * A thread only pays for the bookkeeping of the locks it holds, and takes the monitor of the profiler only for an
+ * order it never saw before.
+ */
+public final class LockProfiler implements Closeable {
+    private final long longHoldNanos;
+    private final Reporter reporter;
+    private final Set<ProfiledLock> locks = Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
+    // lock order, guarded by this for writes, weak on both sides so that a cycle of orders does not keep its locks
+    private final ConcurrentMap<ProfiledLock, Set<ProfiledLock>> takenBefore = new MapMaker().weakKeys().makeMap();
+    private final ThreadLocal<Deque<ProfiledLock>> held = ThreadLocal.withInitial(ArrayDeque::new);
+    private ScheduledFuture<?> watchdog;
+
+    private LockProfiler(long longHoldNanos, Reporter reporter) {
+        this.longHoldNanos = longHoldNanos;
+        this.reporter = checkNotNull(reporter, "reporter");
+    }
+
+    /**
+     * @param longHold locks held at least that long are reported
+     */
+    public static LockProfiler create(long longHold, TimeUnit unit, Reporter reporter) {
+        checkArgument(longHold > 0L, "longHold must be positive");
+        return new LockProfiler(unit.toNanos(longHold), reporter);
+    }
+
+    public ProfiledLock newLock(String name) {
+        return newLock(name, false);
+    }
+
+    public ProfiledLock newLock(String name, boolean fair) {
+        ProfiledLock lock = new ProfiledLock(this, name, fair);
+        this.locks.add(lock);
+        return lock;
+    }
+
+    /**
+     * @return the locks of this profiler still in use
+     */
+    public List<ProfiledLock> locks() {
+        return ImmutableList.copyOf(this.locks);
+    }
+
+    /**
+     * Checks the locks for long holds every {@code period}.
+     */
+    public synchronized LockProfiler start(long period, TimeUnit unit, ScheduledExecutorService executor) {
+        checkState(this.watchdog == null, "already started");
+        this.watchdog = executor.scheduleAtFixedRate(this::checkHolds, period, period, unit);
+        return this;
+    }
+
+    /**
+     * Reports every lock held at least as long as the threshold right now, unless its hold was reported before.
+     */
+    public synchronized void checkHolds() {
+        for (ProfiledLock lock : locks()) {
+            lock.checkHold(this.longHoldNanos, this.reporter);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.watchdog != null)
+            this.watchdog.cancel(false);
+    }
+
+    /**
+     * @return the locks the current thread holds, the lock is pushed once acquired
+     */
+    Deque<ProfiledLock> beforeAcquire(ProfiledLock lock) {
+        Deque<ProfiledLock> held = this.held.get();
+        for (ProfiledLock before : held) {
+            if (before != lock) {
+                Set<ProfiledLock> after = this.takenBefore.get(before);
+                if (after == null || !after.contains(lock))
+                    addOrder(before, lock);
+            }
+        }
+        return held;
+    }
+
+    void released(ProfiledLock lock, long heldNanos) {
+        this.held.get().removeFirstOccurrence(lock);
+        if (heldNanos >= this.longHoldNanos) {
+            Thread owner = Thread.currentThread();
+            this.reporter.longHold(lock.name(), heldNanos, owner, owner.getStackTrace());
+        }
+    }
+
+    private void addOrder(ProfiledLock before, ProfiledLock after) {
+        List<String> cycle;
+        synchronized (this) {
+            Set<ProfiledLock> successors = this.takenBefore.get(before);
+            if (successors == null) {
+                successors = Collections.newSetFromMap(new MapMaker().weakKeys().concurrencyLevel(1).makeMap());
+                this.takenBefore.put(before, successors);
+            }
+            if (!successors.add(after))
+                return;
+            cycle = pathFrom(after, before);
+        }
+        if (cycle != null)
+            this.reporter.lockOrderCycle(cycle, Thread.currentThread());
+    }
+
+    /**
+     * Breadth first search along the known orders.
+     *
+     * @return the names of the locks from {@code from} to {@code to} and back to {@code from}, null if there is no path
+     */
+    private List<String> pathFrom(ProfiledLock from, ProfiledLock to) {
+        Map<ProfiledLock, ProfiledLock> reachedFrom = Maps.newIdentityHashMap();
+        Deque<ProfiledLock> queue = new ArrayDeque<>();
+        queue.add(from);
+        reachedFrom.put(from, from);
+        while (!queue.isEmpty()) {
+            ProfiledLock lock = queue.poll();
+            if (lock == to) {
+                List<String> path = Lists.newArrayList(from.name());
+                for (ProfiledLock step = to; step != from; step = reachedFrom.get(step)) {
+                    path.add(1, step.name());
+                }
+                path.add(from.name());
+                return path;
+            }
+            for (ProfiledLock next : this.takenBefore.getOrDefault(lock, Collections.emptySet())) {
+                if (!reachedFrom.containsKey(next)) {
+                    reachedFrom.put(next, lock);
+                    queue.add(next);
+                }
+            }
+        }
+        return null;
+    }
+
+    public interface Reporter {
+        /**
+         * @param cycle  lock names, the first one repeated at the end
+         * @param thread the thread that took the locks in the order closing the cycle
+         */
+        void lockOrderCycle(List<String> cycle, Thread thread);
+
+        /**
+         * @param owner the thread releasing the lock
+         * @param stack where it released the lock
+         */
+        void longHold(String lock, long heldNanos, Thread owner, StackTraceElement[] stack);
+
+        /**
+         * @param heldNanos how long the lock has been held so far
+         * @param stack     where the owner is right now
+         */
+        void stillHeld(String lock, long heldNanos, Thread owner, StackTraceElement[] stack);
+
+        /**
+         * @return a reporter logging cycles as errors and long holds as warnings through log4j2
+         */
+        static Reporter log4j() {
+            Logger log = LogManager.getLogger(LockProfiler.class.getName());
+            return new Reporter() {
+                @Override
+                public void lockOrderCycle(List<String> cycle, Thread thread) {
+                    log.error("Lock order cycle {} closed by {}", String.join(" -> ", cycle), thread.getName());
+                }
+
+                @Override
+                public void longHold(String lock, long heldNanos, Thread owner, StackTraceElement[] stack) {
+                    log.warn("{} held {}ms by {}{}", lock, TimeUnit.NANOSECONDS.toMillis(heldNanos), owner.getName(),
+                            trace(stack));
+                }
+
+                @Override
+                public void stillHeld(String lock, long heldNanos, Thread owner, StackTraceElement[] stack) {
+                    log.warn("{} held for {}ms so far by {}{}", lock, TimeUnit.NANOSECONDS.toMillis(heldNanos),
+                            owner.getName(), trace(stack));
+                }
+            };
+        }
+
+        static String trace(StackTraceElement[] stack) {
+            StringBuilder trace = new StringBuilder();
+            for (StackTraceElement element : stack) {
+                trace.append(System.lineSeparator()).append("\tat ").append(element);
+            }
+            return trace.toString();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package sample.guava.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * What a {@link ProfiledLock} costs over the {@link ReentrantLock} it extends: a single lock and unlock, and the
+ * left/right pair of {@link LeftRightDeadlock} taken nested, always in the same order, where the profiler looks up the
+ * order of the held lock on every acquisition. Run {@link #main(String[])} to compare 1 thread with 4 contending ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LockProfilerBenchmark {
+    private final ReentrantLock plain = new ReentrantLock();
+    private final ReentrantLock plainLeft = new ReentrantLock();
+    private final ReentrantLock plainRight = new ReentrantLock();
+    private final LockProfiler profiler = LockProfiler.create(1, TimeUnit.SECONDS, new LockProfiler.Reporter() {
+        @Override
+        public void lockOrderCycle(List<String> cycle, Thread thread) {
+            throw new AssertionError("no cycle expected " + cycle);
+        }
+
+        @Override
+        public void longHold(String lock, long heldNanos, Thread owner, StackTraceElement[] stack) {
+        }
+
+        @Override
+        public void stillHeld(String lock, long heldNanos, Thread owner, StackTraceElement[] stack) {
+        }
+    });
+    private final ProfiledLock profiled = profiler.newLock("profiled");
+    private final ProfiledLock profiledLeft = profiler.newLock("left");
+    private final ProfiledLock profiledRight = profiler.newLock("right");
+    private long value;
+
+    @Benchmark
+    public long reentrantLock() {
+        return increment(plain);
+    }
+
+    @Benchmark
+    public long profiledLock() {
+        return increment(profiled);
+    }
+
+    @Benchmark
+    public long reentrantLockNested() {
+        return nested(plainLeft, plainRight);
+    }
+
+    @Benchmark
+    public long profiledLockNested() {
+        return nested(profiledLeft, profiledRight);
+    }
+
+    private long increment(ReentrantLock lock) {
+        lock.lock();
+        try {
+            return ++value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long nested(ReentrantLock left, ReentrantLock right) {
+        left.lock();
+        try {
+            return increment(right);
+        } finally {
+            left.unlock();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 4}) {
+            new Runner(new OptionsBuilder()
+                    .include(LockProfilerBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
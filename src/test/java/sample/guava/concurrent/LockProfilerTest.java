@@ -0,0 +1,203 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LockProfilerTest {
+    private final List<List<String>> cycles = Collections.synchronizedList(Lists.newArrayList());
+    private final List<String> longHolds = Collections.synchronizedList(Lists.newArrayList());
+    private final List<String> stuck = Collections.synchronizedList(Lists.newArrayList());
+    private final LockProfiler profiler = LockProfiler.create(50, TimeUnit.MILLISECONDS, new LockProfiler.Reporter() {
+        @Override
+        public void lockOrderCycle(List<String> cycle, Thread thread) {
+            cycles.add(cycle);
+        }
+
+        @Override
+        public void longHold(String lock, long heldNanos, Thread owner, StackTraceElement[] stack) {
+            if (Arrays.stream(stack).anyMatch(element -> element.getMethodName().contains("recordsWaitAndHoldTimes")))
+                longHolds.add(lock);
+        }
+
+        @Override
+        public void stillHeld(String lock, long heldNanos, Thread owner, StackTraceElement[] stack) {
+            if (Arrays.stream(stack).anyMatch(element -> element.getMethodName().equals("await")))
+                stuck.add(lock + " " + owner.getName());
+        }
+    });
+
+    @Test
+    public void reportsLeftRightOrderWithoutDeadlocking() throws Exception {
+        ProfiledLock left = profiler.newLock("left");
+        ProfiledLock right = profiler.newLock("right");
+        Thread leftRight = new Thread(() -> nest(left, right));
+        leftRight.start();
+        leftRight.join();
+        assertThat(cycles).isEmpty();
+        Thread rightLeft = new Thread(() -> nest(right, left));
+        rightLeft.start();
+        rightLeft.join();
+        assertThat(cycles).isEqualTo(ImmutableList.of(ImmutableList.of("left", "right", "left")));
+        // reported once
+        nest(right, left);
+        assertThat(cycles).hasSize(1);
+    }
+
+    @Test
+    public void reportsLongerCycles() {
+        ProfiledLock a = profiler.newLock("a");
+        ProfiledLock b = profiler.newLock("b");
+        ProfiledLock c = profiler.newLock("c");
+        nest(a, b);
+        nest(b, c);
+        assertThat(cycles).isEmpty();
+        nest(c, a);
+        assertThat(cycles).isEqualTo(ImmutableList.of(ImmutableList.of("a", "b", "c", "a")));
+    }
+
+    @Test
+    public void forgetsLocksOfACycle() throws InterruptedException {
+        ProfiledLock left = profiler.newLock("left");
+        ProfiledLock right = profiler.newLock("right");
+        nest(left, right);
+        nest(right, left);
+        assertThat(cycles).hasSize(1);
+        WeakReference<ProfiledLock> reference = new WeakReference<>(left);
+        left = null;
+        right = null;
+        System.gc();
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat(reference.get()).isNull();
+        assertThat(profiler.locks()).isEmpty();
+    }
+
+    @Test
+    public void reportsFailedTryLockOrder() throws Exception {
+        ProfiledLock left = profiler.newLock("left");
+        ProfiledLock right = profiler.newLock("right");
+        nest(left, right);
+        CountDownLatch isLocked = new CountDownLatch(1);
+        CountDownLatch isDone = new CountDownLatch(1);
+        Thread owner = new Thread(() -> {
+            left.lock();
+            try {
+                isLocked.countDown();
+                isDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                left.unlock();
+            }
+        });
+        owner.start();
+        isLocked.await();
+        right.lock();
+        try {
+            assertThat(left.tryLock()).isFalse();
+        } finally {
+            right.unlock();
+            isDone.countDown();
+        }
+        owner.join();
+        assertThat(cycles).hasSize(1);
+    }
+
+    @Test
+    public void recordsWaitAndHoldTimesOfOutermostHolds() throws Exception {
+        ProfiledLock lock = profiler.newLock("lock");
+        CountDownLatch isLocked = new CountDownLatch(1);
+        Thread owner = new Thread(() -> {
+            lock.lock();
+            try {
+                isLocked.countDown();
+                holdTooLong();
+            } finally {
+                lock.unlock();
+            }
+        });
+        owner.start();
+        isLocked.await();
+        lock.lock();
+        try {
+            lock.lock();
+            lock.unlock();
+        } finally {
+            lock.unlock();
+        }
+        owner.join();
+        assertThat(lock.waitTimes().count()).isEqualTo(2L);
+        assertThat(lock.waitTimes().max()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(lock.holdTimes().count()).isEqualTo(2L);
+        assertThat(lock.holdTimes().max()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(longHolds).containsExactly("lock");
+        assertThat(profiler.locks()).contains(lock);
+    }
+
+    @Test
+    public void watchdogReportsOwnerOfLockNeverReleased() throws Exception {
+        ProfiledLock lock = profiler.newLock("stuck");
+        CountDownLatch isLocked = new CountDownLatch(1);
+        CountDownLatch isDone = new CountDownLatch(1);
+        Thread owner = new Thread(() -> {
+            lock.lock();
+            try {
+                isLocked.countDown();
+                isDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        }, "owner");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            owner.start();
+            isLocked.await();
+            assertThat(lock.owner()).isSameAs(owner);
+            profiler.start(10, TimeUnit.MILLISECONDS, scheduler);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (stuck.isEmpty() && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            // once per hold however often the watchdog looks
+            profiler.checkHolds();
+            assertThat(stuck).containsExactly("stuck owner");
+        } finally {
+            profiler.close();
+            scheduler.shutdownNow();
+            isDone.countDown();
+            owner.join();
+        }
+        assertThat(lock.owner()).isNull();
+    }
+
+    private static void holdTooLong() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void nest(ProfiledLock outer, ProfiledLock inner) {
+        outer.lock();
+        try {
+            inner.lock();
+            inner.unlock();
+        } finally {
+            outer.unlock();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package sample.guava.concurrent;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An unbounded lock-free queue for many producers and a single consumer, after Dmitry Vyukov: a producer swaps
+ * itself in as the tail with one atomic exchange and then links the previous tail to it, the consumer follows the
+ * links from a stub node it alone owns. No producer ever retries, unlike the CAS loops of
+ * {@link java.util.concurrent.ConcurrentLinkedQueue}.
+ * <p>
+ * Between the exchange and the link the consumer does not see the element yet, nor anything offered after it.
+ */
+final class MpscQueue<E> {
+    private final AtomicReference<Node<E>> tail;
+    private Node<E> head;
+
+    MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * May be called by any thread.
+     */
+    void offer(E element) {
+        Node<E> node = new Node<>(checkNotNull(element, "element"));
+        this.tail.getAndSet(node).next = node;
+    }
+
+    /**
+     * Must only be called by the consumer thread.
+     *
+     * @return the next element, null if there is none
+     */
+    E poll() {
+        Node<E> next = this.head.next;
+        if (next == null)
+            return null;
+        E element = next.element;
+        // the node becomes the stub
+        next.element = null;
+        this.head = next;
+        return element;
+    }
+
+    /**
+     * Must only be called by the consumer thread.
+     */
+    boolean isEmpty() {
+        return this.head.next == null;
+    }
+
+    private static final class Node<E> {
+        private E element;
+        private volatile Node<E> next;
+
+        private Node(E element) {
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.Lists;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * One writer and N readers: {@link BoundedList} peeks reading optimistically against {@link ReadLockedPeeks}, the
+ * read lock every peek took before, and {@link Account#getBalance()} while a writer transfers. Run
+ * {@link #main(String[])} for 1, 3, 7 and 15 readers, the read lock CASes its shared reader count on every peek, the
+ * optimistic reads only load the version.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OptimisticReadBenchmark {
+    private final BoundedList<Integer> list = new BoundedList<>(1024);
+    private final ReadLockedPeeks<Integer> locked = new ReadLockedPeeks<>();
+    private final Account from = new Account(Long.MAX_VALUE / 2);
+    private final Account to = new Account(0L);
+    private final TransferEngine engine = new TransferEngine();
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        list.addLast(0);
+        locked.addLast(0);
+    }
+
+    @Benchmark
+    @Group("optimistic")
+    @GroupThreads(1)
+    public Integer optimisticWriter() throws InterruptedException {
+        list.addLast(1);
+        return list.removeLast();
+    }
+
+    @Benchmark
+    @Group("optimistic")
+    @GroupThreads(3)
+    public Integer optimisticReader() throws InterruptedException {
+        return list.peekFirst();
+    }
+
+    @Benchmark
+    @Group("readLocked")
+    @GroupThreads(1)
+    public Integer readLockedWriter() {
+        locked.addLast(1);
+        return locked.removeLast();
+    }
+
+    @Benchmark
+    @Group("readLocked")
+    @GroupThreads(3)
+    public Integer readLockedReader() {
+        return locked.peekFirst();
+    }
+
+    @Benchmark
+    @Group("balance")
+    @GroupThreads(1)
+    public void balanceWriter() throws Exception {
+        engine.transfer(from, to, 1L);
+    }
+
+    @Benchmark
+    @Group("balance")
+    @GroupThreads(3)
+    public long balanceReader() {
+        return to.getBalance();
+    }
+
+    /**
+     * The peeks of {@link BoundedList} before they read optimistically.
+     */
+    static final class ReadLockedPeeks<E> {
+        private final Deque<E> deque = Lists.newLinkedList();
+        private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+
+        void addLast(E element) {
+            readWriteLock.writeLock().lock();
+            try {
+                deque.addLast(element);
+            } finally {
+                readWriteLock.writeLock().unlock();
+            }
+        }
+
+        E removeLast() {
+            readWriteLock.writeLock().lock();
+            try {
+                return deque.removeLast();
+            } finally {
+                readWriteLock.writeLock().unlock();
+            }
+        }
+
+        E peekFirst() {
+            readWriteLock.readLock().lock();
+            try {
+                return deque.peekFirst();
+            } finally {
+                readWriteLock.readLock().unlock();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int readers : new int[]{1, 3, 7, 15}) {
+            Options options = new OptionsBuilder()
+                    .include(OptimisticReadBenchmark.class.getSimpleName())
+                    .threadGroups(1, readers)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package sample.guava.concurrent;
+
+import java.io.Closeable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Sizes a {@link TimingThreadPoolExecutor} from the execution times it records, with a gradient concurrency limit:
+ * while the median execution time of a window stays within {@code TOLERANCE} of its long term average the limit
+ * grows by its square root, as soon as tasks slow down because too many of them compete for the same resources it
+ * shrinks in proportion to the slowdown. Both moves are smoothed over several windows.
+ * <p>
+ * The limit becomes the maximum pool size, and the core pool size if that was larger. What happens to the tasks
+ * above the limit is up to the pool: with a {@link java.util.concurrent.SynchronousQueue} they go to its
+ * {@link java.util.concurrent.RejectedExecutionHandler}, an {@link ThreadPoolExecutor.AbortPolicy} sheds them and a
+ * {@link ThreadPoolExecutor.CallerRunsPolicy} slows the submitters down, a bounded queue holds them.
+ */
+public final class PoolSizeController implements Closeable {
+    private static final double TOLERANCE = 1.5D;
+    private static final double SMOOTHING = 0.2D;
+    private static final double LONG_TERM_SMOOTHING = 0.05D;
+
+    private final TimingThreadPoolExecutor pool;
+    private final PoolStatsSampler sampler;
+    private final int minLimit;
+    private final int maxLimit;
+    private double limit;
+    private double longTermNanos;
+    private ScheduledFuture<?> schedule;
+
+    private PoolSizeController(TimingThreadPoolExecutor pool, int minLimit, int maxLimit) {
+        checkArgument(minLimit > 0, "minLimit must be positive");
+        checkArgument(maxLimit >= minLimit, "maxLimit must not be below minLimit");
+        this.pool = checkNotNull(pool, "pool");
+        this.sampler = PoolStatsSampler.create(getClass().getSimpleName(), pool, (name, window) -> {
+        });
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = minLimit;
+        apply(minLimit);
+    }
+
+    /**
+     * Starts the pool at {@code minLimit} threads.
+     */
+    public static PoolSizeController create(TimingThreadPoolExecutor pool, int minLimit, int maxLimit) {
+        return new PoolSizeController(pool, minLimit, maxLimit);
+    }
+
+    public synchronized PoolSizeController start(long period, TimeUnit unit, ScheduledExecutorService executor) {
+        checkState(this.schedule == null, "already started");
+        this.schedule = executor.scheduleAtFixedRate(this::adjust, period, period, unit);
+        return this;
+    }
+
+    /**
+     * Samples the pool once and resizes it.
+     *
+     * @return the new limit
+     */
+    public synchronized int adjust() {
+        PoolStatsSampler.Window window = this.sampler.sample();
+        if (window.executionTimes().count() > 0) {
+            boolean isSaturated = window.rejectedTasks() > 0 || window.stats().queueDepth() > 0
+                    || window.stats().activeWorkers() * 2 >= limit();
+            update(window.executionTimes().valueAtPercentile(50D), isSaturated);
+            apply(limit());
+        }
+        return limit();
+    }
+
+    public synchronized int limit() {
+        return (int) Math.ceil(this.limit);
+    }
+
+    /**
+     * One step of the gradient algorithm.
+     *
+     * @param shortTermNanos the median execution time of the last window
+     * @param isSaturated    whether the pool used its limit, there is no point in growing a limit nobody reaches
+     */
+    synchronized void update(double shortTermNanos, boolean isSaturated) {
+        if (this.longTermNanos == 0D) {
+            this.longTermNanos = shortTermNanos;
+        } else {
+            this.longTermNanos += (shortTermNanos - this.longTermNanos) * LONG_TERM_SMOOTHING;
+        }
+        // after a long overload the average lags behind, let it recover quickly once tasks speed up again
+        if (this.longTermNanos > 2D * shortTermNanos)
+            this.longTermNanos *= 0.9D;
+        double gradient = Math.max(0.5D, Math.min(1D, TOLERANCE * this.longTermNanos / Math.max(1D, shortTermNanos)));
+        if (gradient == 1D && !isSaturated)
+            return;
+        double target = this.limit * gradient + (gradient == 1D ? Math.sqrt(this.limit) : 0D);
+        double smoothed = this.limit * (1D - SMOOTHING) + target * SMOOTHING;
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, smoothed));
+    }
+
+    private void apply(int size) {
+        if (size < this.pool.getCorePoolSize())
+            this.pool.setCorePoolSize(size);
+        this.pool.setMaximumPoolSize(size);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.schedule != null)
+            this.schedule.cancel(false);
+    }
+}
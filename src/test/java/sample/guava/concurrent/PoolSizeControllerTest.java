@@ -0,0 +1,143 @@
+package sample.guava.concurrent;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PoolSizeControllerTest {
+    private static final long WORK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    /**
+     * Iterations of {@link #work(long)} that take {@link #WORK_NANOS} of CPU time.
+     */
+    private static final long WORK_ITERATIONS = calibrate();
+    private static volatile long sink;
+
+    private final Logger log = LogManager.getLogger(this.getClass().getName());
+
+    private static TimingThreadPoolExecutor cachedPool() {
+        return new TimingThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>());
+    }
+
+    @Test
+    public void growsWhileLatencyHoldsAndShrinksWhenItRises() {
+        TimingThreadPoolExecutor pool = cachedPool();
+        PoolSizeController controller = PoolSizeController.create(pool, 2, 64);
+        assertThat(pool.getMaximumPoolSize()).isEqualTo(2);
+        for (int i = 0; i < 50; i++) {
+            controller.update(1_000_000D, true);
+        }
+        int grown = controller.limit();
+        assertThat(grown).isBetween(20, 64);
+
+        // not using the limit, nothing to learn
+        controller.update(1_000_000D, false);
+        assertThat(controller.limit()).isEqualTo(grown);
+
+        // before the long term average takes the slowdown for the new normal
+        for (int i = 0; i < 10; i++) {
+            controller.update(10_000_000D, true);
+        }
+        assertThat(controller.limit()).isLessThan(grown / 2);
+        pool.shutdown();
+    }
+
+    /**
+     * An open loop load generator submits twice the work a spin lock lets through. The cached pool starts a thread for
+     * every task that finds no idle one, and the more threads spin for the lock, the less CPU time its holder gets:
+     * the cached pool collapses. The controlled pool sheds what it cannot do, its few threads keep the lock moving.
+     */
+    @Test
+    public void staysResponsiveUnderOverload() throws Exception {
+        TimingThreadPoolExecutor unbounded = cachedPool();
+        TimingThreadPoolExecutor controlled = cachedPool();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        int limit = Runtime.getRuntime().availableProcessors() * 4;
+        try (PoolSizeController controller = PoolSizeController.create(controlled, 1, limit)
+                .start(50, TimeUnit.MILLISECONDS, scheduler)) {
+            long unboundedThroughput = overload(unbounded);
+            long controlledThroughput = overload(controlled);
+            log.info("unbounded: {} completed per second, {}", unboundedThroughput, unbounded.stats());
+            log.info("controlled to {} threads: {} completed per second, {}", controller.limit(), controlledThroughput, controlled.stats());
+
+            assertThat(controlled.getLargestPoolSize()).isLessThanOrEqualTo(limit);
+            assertThat(unbounded.getLargestPoolSize()).isGreaterThan(limit);
+            assertThat(controlled.stats().rejectedTasks()).isPositive();
+            assertThat(controlledThroughput).isGreaterThan(unboundedThroughput * 2);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits 2 tasks every 5 milliseconds, catching up whenever it got the CPU late, each task doing 5 milliseconds
+     * of work while it holds a spin lock shared by all of them: twice what the lock lets through, on any number of
+     * cores. The work outlasts a time slice, so waiters do take the CPU from the holder.
+     *
+     * @return tasks completed per second of submitting, the submitting thread may get the CPU late and submit a bit
+     * longer than a second
+     */
+    private static long overload(TimingThreadPoolExecutor pool) throws InterruptedException {
+        AtomicBoolean lock = new AtomicBoolean();
+        long start = System.nanoTime();
+        long submitted = 0L;
+        long elapsed = 0L;
+        for (; elapsed < TimeUnit.SECONDS.toNanos(1); elapsed = System.nanoTime() - start) {
+            for (long due = elapsed * 2L / WORK_NANOS; submitted < due; submitted++) {
+                try {
+                    pool.execute(() -> holdSpinLock(lock));
+                } catch (RejectedExecutionException e) {
+                    // shed
+                }
+            }
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        long completed = pool.getCompletedTaskCount() * TimeUnit.SECONDS.toNanos(1) / elapsed;
+        pool.shutdownNow();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        return completed;
+    }
+
+    private static void holdSpinLock(AtomicBoolean lock) {
+        while (!lock.compareAndSet(false, true)) {
+            // waiters burn the CPU time the holder needs
+            if (Thread.currentThread().isInterrupted())
+                return;
+        }
+        try {
+            // CPU time, not wall clock time, a holder preempted by the waiters takes longer
+            sink = work(WORK_ITERATIONS);
+        } finally {
+            lock.set(false);
+        }
+    }
+
+    private static long work(long iterations) {
+        long x = 1L;
+        for (long i = 0L; i < iterations; i++) {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+        }
+        return x;
+    }
+
+    private static long calibrate() {
+        long iterations = 1_000_000L;
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < 20; i++) {
+            long start = System.nanoTime();
+            sink = work(iterations);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        return Math.max(1L, iterations * WORK_NANOS / fastest);
+    }
+}
@@ -0,0 +1,149 @@
+package sample.guava.concurrent;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Stopwatch;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import sample.guava.cache.LatencyHistogram;
+
+import java.io.Closeable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Samples {@link TimingThreadPoolExecutor#stats()} on a schedule and reports each window: queue depth and workers at
+ * the end of the window, completion and rejection rates, and the queue wait and execution percentiles of the tasks
+ * of the window only. A series of windows shows the queue depth over time.
+ */
+public final class PoolStatsSampler implements Closeable {
+    private final String name;
+    private final TimingThreadPoolExecutor pool;
+    private final Reporter reporter;
+    private final Stopwatch stopwatch = Stopwatch.createStarted();
+    private TimingThreadPoolExecutor.Stats lastStats;
+    private long lastNanos;
+    private ScheduledFuture<?> schedule;
+
+    private PoolStatsSampler(String name, TimingThreadPoolExecutor pool, Reporter reporter) {
+        this.name = checkNotNull(name, "name");
+        this.pool = checkNotNull(pool, "pool");
+        this.reporter = checkNotNull(reporter, "reporter");
+        this.lastStats = pool.stats();
+    }
+
+    public static PoolStatsSampler create(String name, TimingThreadPoolExecutor pool, Reporter reporter) {
+        return new PoolStatsSampler(name, pool, reporter);
+    }
+
+    public synchronized PoolStatsSampler start(long period, TimeUnit unit, ScheduledExecutorService executor) {
+        checkState(this.schedule == null, "already started");
+        this.schedule = executor.scheduleAtFixedRate(() -> this.reporter.report(this.name, sample()), period, period, unit);
+        return this;
+    }
+
+    /**
+     * @return what happened since the previous sample, or since creation for the first one
+     */
+    public synchronized Window sample() {
+        TimingThreadPoolExecutor.Stats stats = this.pool.stats();
+        long nanos = this.stopwatch.elapsed(TimeUnit.NANOSECONDS);
+        Window window = new Window(stats, this.lastStats, nanos - this.lastNanos);
+        this.lastStats = stats;
+        this.lastNanos = nanos;
+        return window;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.schedule != null)
+            this.schedule.cancel(false);
+    }
+
+    @FunctionalInterface
+    public interface Reporter {
+        void report(String name, Window window);
+
+        /**
+         * @return a reporter logging every window at info level through log4j2
+         */
+        static Reporter log4j() {
+            Logger log = LogManager.getLogger(PoolStatsSampler.class.getName());
+            return (name, window) -> log.info("{}: {}", name, window);
+        }
+    }
+
+    public static final class Window {
+        private final TimingThreadPoolExecutor.Stats stats;
+        private final long completedTasks;
+        private final long rejectedTasks;
+        private final LatencyHistogram.Snapshot queueWaitTimes;
+        private final LatencyHistogram.Snapshot executionTimes;
+        private final long elapsedNanos;
+
+        private Window(TimingThreadPoolExecutor.Stats stats, TimingThreadPoolExecutor.Stats previous, long elapsedNanos) {
+            this.stats = stats;
+            this.completedTasks = stats.completedTasks() - previous.completedTasks();
+            this.rejectedTasks = stats.rejectedTasks() - previous.rejectedTasks();
+            this.queueWaitTimes = stats.queueWaitTimes().minus(previous.queueWaitTimes());
+            this.executionTimes = stats.executionTimes().minus(previous.executionTimes());
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the stats at the end of this window, counters are since the pool was created
+         */
+        public TimingThreadPoolExecutor.Stats stats() {
+            return this.stats;
+        }
+
+        public long completedTasks() {
+            return this.completedTasks;
+        }
+
+        public long rejectedTasks() {
+            return this.rejectedTasks;
+        }
+
+        public LatencyHistogram.Snapshot queueWaitTimes() {
+            return this.queueWaitTimes;
+        }
+
+        public LatencyHistogram.Snapshot executionTimes() {
+            return this.executionTimes;
+        }
+
+        public long elapsedNanos() {
+            return this.elapsedNanos;
+        }
+
+        public double completionsPerSecond() {
+            return perSecond(this.completedTasks);
+        }
+
+        public double rejectionsPerSecond() {
+            return perSecond(this.rejectedTasks);
+        }
+
+        private double perSecond(long count) {
+            return this.elapsedNanos == 0L ? 0D : count * (double) TimeUnit.SECONDS.toNanos(1) / this.elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("elapsed", TimeUnit.NANOSECONDS.toMillis(this.elapsedNanos) + "ms")
+                    .add("queueDepth", this.stats.queueDepth())
+                    .add("activeWorkers", this.stats.activeWorkers())
+                    .add("idleWorkers", this.stats.idleWorkers())
+                    .add("completions/s", String.format("%.1f", completionsPerSecond()))
+                    .add("rejections/s", String.format("%.1f", rejectionsPerSecond()))
+                    .add("queueWait", this.queueWaitTimes)
+                    .add("execution", this.executionTimes)
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PoolStatsSamplerTest {
+
+    @Test
+    public void saturationAndWindows() throws Exception {
+        TimingThreadPoolExecutor pool = new TimingThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(3));
+        PoolStatsSampler sampler = PoolStatsSampler.create("test", pool, PoolStatsSampler.Reporter.log4j());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        Runnable blocking = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        for (int i = 0; i < 5; i++) {
+            pool.execute(blocking);
+        }
+        assertThatThrownBy(() -> pool.execute(blocking)).isInstanceOf(RejectedExecutionException.class);
+        started.await();
+
+        TimingThreadPoolExecutor.Stats stats = pool.stats();
+        assertThat(stats.queueDepth()).isEqualTo(3);
+        assertThat(stats.largestQueueDepth()).isEqualTo(3);
+        assertThat(stats.activeWorkers()).isEqualTo(2);
+        assertThat(stats.idleWorkers()).isZero();
+        assertThat(stats.rejectedTasks()).isEqualTo(1);
+        PoolStatsSampler.Window first = sampler.sample();
+        assertThat(first.rejectedTasks()).isEqualTo(1);
+        assertThat(first.completedTasks()).isZero();
+
+        release.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        PoolStatsSampler.Window second = sampler.sample();
+        assertThat(second.rejectedTasks()).isZero();
+        assertThat(second.completedTasks()).isEqualTo(5);
+        assertThat(second.queueWaitTimes().count()).isEqualTo(3);
+        assertThat(second.executionTimes().count()).isEqualTo(5);
+        assertThat(second.stats().queueDepth()).isZero();
+    }
+
+    @Test
+    public void reportsPeriodically() throws Exception {
+        TimingThreadPoolExecutor pool = new TimingThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1));
+        List<PoolStatsSampler.Window> windows = Lists.newCopyOnWriteArrayList();
+        CountDownLatch reported = new CountDownLatch(2);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try (PoolStatsSampler sampler = PoolStatsSampler.create("test", pool, (name, window) -> {
+            windows.add(window);
+            reported.countDown();
+        })) {
+            sampler.start(10, TimeUnit.MILLISECONDS, scheduler);
+            pool.execute(() -> {
+            });
+            assertThat(reported.await(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            scheduler.shutdown();
+            pool.shutdown();
+        }
+        assertThat(windows.stream().mapToLong(PoolStatsSampler.Window::elapsedNanos).min().getAsLong()).isPositive();
+    }
+}
@@ -0,0 +1,172 @@
+package sample.guava.concurrent;
+
+import com.google.common.base.MoreObjects;
+import sample.guava.cache.LatencyHistogram;
+
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link java.util.concurrent.locks.ReentrantLock} that records how long threads waited for it and how long they
+ * held it, and tells its {@link LockProfiler} which locks a thread holds when it takes this one. Create it with
+ * {@link LockProfiler#newLock(String)}, it replaces a {@code ReentrantLock} anywhere.
+ * <p>
+ * Only the outermost acquisition of a reentrant hold is timed. Waiting on a {@link #newCondition() condition}
+ * releases the lock without this lock noticing, that time counts as held.
+ */
+public final class ProfiledLock extends java.util.concurrent.locks.ReentrantLock {
+    private static final long serialVersionUID = 1L;
+    private static final long NOT_HELD = Long.MIN_VALUE;
+
+    private final transient LockProfiler profiler;
+    private final String name;
+    private final transient LatencyHistogram waitTimes = new LatencyHistogram();
+    private final transient LatencyHistogram holdTimes = new LatencyHistogram();
+    // written by the owner, read by the watchdog of the profiler
+    private volatile long acquiredAt = NOT_HELD;
+    // confined to the watchdog
+    private long reportedAt;
+
+    ProfiledLock(LockProfiler profiler, String name, boolean fair) {
+        super(fair);
+        this.profiler = checkNotNull(profiler, "profiler");
+        this.name = checkNotNull(name, "name");
+    }
+
+    public String name() {
+        return this.name;
+    }
+
+    @Override
+    public void lock() {
+        boolean isReentrant = isHeldByCurrentThread();
+        Deque<ProfiledLock> held = isReentrant ? null : this.profiler.beforeAcquire(this);
+        long start = System.nanoTime();
+        super.lock();
+        if (!isReentrant)
+            acquired(start, held);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        boolean isReentrant = isHeldByCurrentThread();
+        Deque<ProfiledLock> held = isReentrant ? null : this.profiler.beforeAcquire(this);
+        long start = System.nanoTime();
+        super.lockInterruptibly();
+        if (!isReentrant)
+            acquired(start, held);
+    }
+
+    /**
+     * A {@code tryLock} cannot deadlock, but the order it tries locks in still counts, also when it fails: the next
+     * caller may block.
+     */
+    @Override
+    public boolean tryLock() {
+        boolean isReentrant = isHeldByCurrentThread();
+        Deque<ProfiledLock> held = isReentrant ? null : this.profiler.beforeAcquire(this);
+        long start = System.nanoTime();
+        boolean isLocked = super.tryLock();
+        if (isLocked && !isReentrant)
+            acquired(start, held);
+        return isLocked;
+    }
+
+    @Override
+    public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+        boolean isReentrant = isHeldByCurrentThread();
+        Deque<ProfiledLock> held = isReentrant ? null : this.profiler.beforeAcquire(this);
+        long start = System.nanoTime();
+        boolean isLocked = super.tryLock(timeout, unit);
+        if (isLocked && !isReentrant)
+            acquired(start, held);
+        return isLocked;
+    }
+
+    /**
+     * Long holds are reported once the lock is free again.
+     */
+    @Override
+    public void unlock() {
+        if (getHoldCount() != 1) {
+            super.unlock();
+            return;
+        }
+        long held = System.nanoTime() - this.acquiredAt;
+        // the next owner holds the lock before it sets the time of its hold
+        this.acquiredAt = NOT_HELD;
+        this.holdTimes.record(held);
+        super.unlock();
+        this.profiler.released(this, held);
+    }
+
+    private void acquired(long start, Deque<ProfiledLock> held) {
+        this.acquiredAt = System.nanoTime();
+        this.waitTimes.record(this.acquiredAt - start);
+        held.push(this);
+    }
+
+    /**
+     * @return how long threads waited to acquire this lock, in nanoseconds
+     */
+    public LatencyHistogram.Snapshot waitTimes() {
+        return this.waitTimes.snapshot();
+    }
+
+    /**
+     * @return how long threads held this lock, in nanoseconds
+     */
+    public LatencyHistogram.Snapshot holdTimes() {
+        return this.holdTimes.snapshot();
+    }
+
+    /**
+     * @return the thread holding this lock right now, null if it is free
+     */
+    public Thread owner() {
+        return getOwner();
+    }
+
+    /**
+     * Called by the watchdog only, reports the current hold once if it lasts at least {@code longHoldNanos}.
+     */
+    void checkHold(long longHoldNanos, LockProfiler.Reporter reporter) {
+        Thread owner = getOwner();
+        if (owner == null)
+            return;
+        long acquiredAt = this.acquiredAt;
+        if (acquiredAt == NOT_HELD || acquiredAt == this.reportedAt)
+            return;
+        long held = System.nanoTime() - acquiredAt;
+        // the owner may have released and reacquired since, then acquiredAt is not the time of its hold
+        if (held < longHoldNanos || owner != getOwner())
+            return;
+        StackTraceElement[] stack = owner.getStackTrace();
+        // still the same hold once the stack is taken
+        if (owner == getOwner() && acquiredAt == this.acquiredAt) {
+            this.reportedAt = acquiredAt;
+            reporter.stillHeld(this.name, held, owner, stack);
+        }
+    }
+
+    /**
+     * @return the threads waiting for this lock right now, an estimate
+     */
+    public Collection<Thread> queuedThreads() {
+        return getQueuedThreads();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("name", this.name)
+                .add("owner", getOwner() == null ? null : getOwner().getName())
+                .add("queued", getQueueLength())
+                .add("wait", waitTimes())
+                .add("hold", holdTimes())
+                .toString();
+    }
+}
@@ -0,0 +1,230 @@
+package sample.guava.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A bounded blocking deque with the operations of {@link BoundedList}, backed by a ring buffer instead of a locked
+ * {@link java.util.LinkedList}.
+ * <p>
+ * The head index and the size are packed into one {@link AtomicLong}, so claiming a slot at either end is a single
+ * compare-and-set and adds allocate nothing. The claiming thread then hands the element over through the slot
+ * itself: an adder waits for the slot to be empty, a remover for it to be filled. Threads only take the lock and
+ * park when the deque is full or empty.
+ * <p>
+ * Elements must not be null. Under contention, elements added and removed at the same moment may leave in a
+ * slightly different order than a lock would impose.
+ */
+public class RingBufferDeque<E> {
+    private final int limit;
+    private final AtomicReferenceArray<E> slots;
+    // head index in the upper 32 bits, size in the lower 32 bits
+    private final AtomicLong state = new AtomicLong();
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private final Condition notFull = this.lock.newCondition();
+    private volatile int waitingRemovers;
+    private volatile int waitingAdders;
+
+    public RingBufferDeque() {
+        this(20);
+    }
+
+    public RingBufferDeque(int limit) {
+        checkArgument(limit > 0, "limit must be positive");
+        this.limit = limit;
+        this.slots = new AtomicReferenceArray<>(limit);
+    }
+
+    public void addFirst(E element) throws InterruptedException {
+        checkNotNull(element);
+        if (!offerFirst(element)) {
+            awaitNotFull(element, true);
+        }
+    }
+
+    public void addLast(E element) throws InterruptedException {
+        checkNotNull(element);
+        if (!offerLast(element)) {
+            awaitNotFull(element, false);
+        }
+    }
+
+    public E removeFirst() throws InterruptedException {
+        E element = pollFirst();
+        return element != null ? element : awaitNotEmpty(true);
+    }
+
+    public E removeLast() throws InterruptedException {
+        E element = pollLast();
+        return element != null ? element : awaitNotEmpty(false);
+    }
+
+    /**
+     * @return false instead of waiting when the deque is full
+     */
+    public boolean offerFirst(E element) {
+        checkNotNull(element);
+        while (true) {
+            long current = this.state.get();
+            int head = head(current);
+            int size = size(current);
+            if (size == this.limit) {
+                return false;
+            }
+            int first = head == 0 ? this.limit - 1 : head - 1;
+            if (this.state.compareAndSet(current, pack(first, size + 1))) {
+                fill(first, element);
+                return true;
+            }
+        }
+    }
+
+    public boolean offerLast(E element) {
+        checkNotNull(element);
+        while (true) {
+            long current = this.state.get();
+            int head = head(current);
+            int size = size(current);
+            if (size == this.limit) {
+                return false;
+            }
+            if (this.state.compareAndSet(current, pack(head, size + 1))) {
+                fill(index(head + size), element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return null instead of waiting when the deque is empty
+     */
+    public E pollFirst() {
+        while (true) {
+            long current = this.state.get();
+            int head = head(current);
+            int size = size(current);
+            if (size == 0) {
+                return null;
+            }
+            if (this.state.compareAndSet(current, pack(index(head + 1), size - 1))) {
+                return empty(head);
+            }
+        }
+    }
+
+    public E pollLast() {
+        while (true) {
+            long current = this.state.get();
+            int head = head(current);
+            int size = size(current);
+            if (size == 0) {
+                return null;
+            }
+            if (this.state.compareAndSet(current, pack(head, size - 1))) {
+                return empty(index(head + size - 1));
+            }
+        }
+    }
+
+    /**
+     * @return the first element, or null when empty or when the first element is still being added
+     */
+    public E peekFirst() {
+        long current = this.state.get();
+        return size(current) == 0 ? null : this.slots.get(head(current));
+    }
+
+    public E peekLast() {
+        long current = this.state.get();
+        return size(current) == 0 ? null : this.slots.get(index(head(current) + size(current) - 1));
+    }
+
+    public int size() {
+        return size(this.state.get());
+    }
+
+    private void awaitNotFull(E element, boolean first) throws InterruptedException {
+        this.lock.lock();
+        try {
+            // announced before trying again, so a remover either leaves room for this try or signals afterwards
+            this.waitingAdders++;
+            try {
+                while (!(first ? offerFirst(element) : offerLast(element)))
+                    this.notFull.await();
+            } finally {
+                this.waitingAdders--;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private E awaitNotEmpty(boolean first) throws InterruptedException {
+        this.lock.lock();
+        try {
+            this.waitingRemovers++;
+            try {
+                E element;
+                while ((element = first ? pollFirst() : pollLast()) == null)
+                    this.notEmpty.await();
+                return element;
+            } finally {
+                this.waitingRemovers--;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void fill(int index, E element) {
+        // a remover that claimed this slot earlier may not have taken its element yet
+        while (!this.slots.compareAndSet(index, null, element))
+            Thread.yield();
+        if (this.waitingRemovers > 0) {
+            signal(this.notEmpty);
+        }
+    }
+
+    private E empty(int index) {
+        // the adder that claimed this slot may not have stored its element yet
+        E element;
+        while ((element = this.slots.getAndSet(index, null)) == null)
+            Thread.yield();
+        if (this.waitingAdders > 0) {
+            signal(this.notFull);
+        }
+        return element;
+    }
+
+    private void signal(Condition condition) {
+        this.lock.lock();
+        try {
+            condition.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private int index(int position) {
+        return position >= this.limit ? position - this.limit : position;
+    }
+
+    private static int head(long state) {
+        return (int) (state >>> 32);
+    }
+
+    private static int size(long state) {
+        return (int) state;
+    }
+
+    private static long pack(int head, int size) {
+        return (long) head << 32 | size;
+    }
+}
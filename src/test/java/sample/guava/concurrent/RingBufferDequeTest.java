@@ -0,0 +1,93 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.Lists;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RingBufferDequeTest {
+    private final Logger log = LogManager.getLogger(this.getClass().getName());
+
+    @Test
+    public void bothEnds() throws InterruptedException {
+        RingBufferDeque<String> deque = new RingBufferDeque<>(3);
+        deque.addLast("b");
+        deque.addFirst("a");
+        deque.addLast("c");
+        assertThat(deque.offerLast("d")).isFalse();
+        assertThat(deque.peekFirst()).isEqualTo("a");
+        assertThat(deque.peekLast()).isEqualTo("c");
+        assertThat(deque.removeLast()).isEqualTo("c");
+        assertThat(deque.removeFirst()).isEqualTo("a");
+        // wraps around the start of the ring
+        deque.addFirst("z");
+        deque.addFirst("y");
+        assertThat(deque.size()).isEqualTo(3);
+        assertThat(deque.removeFirst()).isEqualTo("y");
+        assertThat(deque.removeFirst()).isEqualTo("z");
+        assertThat(deque.removeFirst()).isEqualTo("b");
+        assertThat(deque.pollFirst()).isNull();
+    }
+
+    @Test
+    public void blockUntilRemoved() throws Exception {
+        RingBufferDeque<Integer> deque = new RingBufferDeque<>(1);
+        deque.addLast(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<?> adding = pool.submit(() -> {
+            deque.addLast(2);
+            return null;
+        });
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat(adding.isDone()).isFalse();
+        assertThat(deque.removeFirst()).isEqualTo(1);
+        adding.get(1, TimeUnit.SECONDS);
+        assertThat(deque.removeFirst()).isEqualTo(2);
+        pool.shutdown();
+    }
+
+    @Test
+    public void producersAndConsumers() throws Exception {
+        RingBufferDeque<Integer> deque = new RingBufferDeque<>(8);
+        int threads = 4;
+        int perThread = 100_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads * 2);
+        List<Future<Long>> sums = Lists.newArrayList();
+        for (int t = 0; t < threads; t++) {
+            final boolean front = t % 2 == 0;
+            pool.submit(() -> {
+                for (int i = 1; i <= perThread; i++) {
+                    if (front)
+                        deque.addFirst(i);
+                    else
+                        deque.addLast(i);
+                }
+                return null;
+            });
+            sums.add(pool.submit((Callable<Long>) () -> {
+                long sum = 0L;
+                for (int i = 0; i < perThread; i++) {
+                    sum += front ? deque.removeFirst() : deque.removeLast();
+                }
+                return sum;
+            }));
+        }
+        long total = 0L;
+        for (Future<Long> sum : sums) {
+            total += sum.get(30, TimeUnit.SECONDS);
+        }
+        log.debug("transferred {} elements", threads * perThread);
+        assertThat(total).isEqualTo(threads * (long) perThread * (perThread + 1) / 2);
+        assertThat(deque.size()).isZero();
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,271 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * An alternative to locking {@link Account}s: the accounts are partitioned over shards, every shard owns its balances
+ * and is the only thread to ever read or write them, other threads send it messages through an {@link MpscQueue}.
+ * Nothing is locked, a shard applies its messages one after another.
+ * <p>
+ * A transfer within a shard is a single message. A transfer across shards takes two phases: the source shard checks
+ * the funds and moves the amount from the balance to its reservations, the target shard credits it, or, if the target
+ * account does not exist, the source shard releases the reservation back to the balance. Only then does the source
+ * shard drop the reservation, the commit. Money is therefore always in a balance or a reservation, and
+ * {@link #total()} is exact once no transfer is in flight.
+ * <p>
+ * The returned futures complete on the shard threads, callbacks should be short. Once {@link #close() closed}, every
+ * method throws an {@link IllegalStateException}.
+ */
+public final class ShardedLedger implements Closeable {
+    /**
+     * Polls of an empty queue before a shard parks.
+     */
+    private static final int SPINS = 64;
+    /**
+     * Messages a transfer takes at most one after another: reserve, credit, and commit or release.
+     */
+    private static final int HOPS = 3;
+
+    private final Shard[] shards;
+    private volatile boolean isClosed;
+
+    private ShardedLedger(int shards) {
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(i);
+        }
+        for (Shard shard : this.shards) {
+            shard.thread.start();
+        }
+    }
+
+    public static ShardedLedger create(int shards) {
+        checkArgument(shards > 0, "shards must be positive");
+        return new ShardedLedger(shards);
+    }
+
+    public int shards() {
+        return this.shards.length;
+    }
+
+    /**
+     * Fails with an {@link IllegalArgumentException} if the account exists.
+     */
+    public CompletableFuture<Void> open(long account, long balance) {
+        checkArgument(balance >= 0L, "balance must not be negative");
+        checkOpen();
+        CompletableFuture<Void> opened = new CompletableFuture<>();
+        shardOf(account).send(shard -> {
+            if (shard.balances.containsKey(account)) {
+                opened.completeExceptionally(new IllegalArgumentException("account " + account + " exists"));
+            } else {
+                shard.balances.put(account, new long[]{balance});
+                opened.complete(null);
+            }
+        });
+        return opened;
+    }
+
+    /**
+     * Fails with an {@link IllegalArgumentException} if the account does not exist.
+     */
+    public CompletableFuture<Long> balance(long account) {
+        checkOpen();
+        CompletableFuture<Long> balance = new CompletableFuture<>();
+        shardOf(account).send(shard -> {
+            long[] cell = shard.balances.get(account);
+            if (cell == null) {
+                balance.completeExceptionally(unknown(account));
+            } else {
+                balance.complete(cell[0]);
+            }
+        });
+        return balance;
+    }
+
+    /**
+     * Completes once the target account was credited. Fails with an {@link InsufficientFundsException} if the
+     * source account cannot fund the amount, and with an {@link IllegalArgumentException} if an account does not
+     * exist.
+     */
+    public CompletableFuture<Void> transfer(long from, long to, long amount) {
+        checkArgument(from != to, "transfer from %s to itself", from);
+        checkArgument(amount > 0L, "amount must be positive");
+        checkOpen();
+        CompletableFuture<Void> transferred = new CompletableFuture<>();
+        Shard source = shardOf(from);
+        Shard target = shardOf(to);
+        source.send(shard -> {
+            long[] debit = shard.balances.get(from);
+            if (debit == null) {
+                transferred.completeExceptionally(unknown(from));
+                return;
+            }
+            if (debit[0] < amount) {
+                transferred.completeExceptionally(new InsufficientFundsException());
+                return;
+            }
+            if (source == target) {
+                long[] credit = shard.balances.get(to);
+                if (credit == null) {
+                    transferred.completeExceptionally(unknown(to));
+                    return;
+                }
+                debit[0] -= amount;
+                credit[0] += amount;
+                transferred.complete(null);
+                return;
+            }
+            // phase one, reserve
+            debit[0] -= amount;
+            shard.reserved += amount;
+            target.send(targetShard -> {
+                long[] credit = targetShard.balances.get(to);
+                if (credit == null) {
+                    source.send(sourceShard -> {
+                        // abort, release
+                        sourceShard.balances.get(from)[0] += amount;
+                        sourceShard.reserved -= amount;
+                        transferred.completeExceptionally(unknown(to));
+                    });
+                    return;
+                }
+                credit[0] += amount;
+                // phase two, commit, queued before anything the completion may send to the source shard
+                source.send(sourceShard -> sourceShard.reserved -= amount);
+                transferred.complete(null);
+            });
+        });
+        return transferred;
+    }
+
+    /**
+     * @return the sum of all balances and reservations, all money the ledger holds once no transfer is in flight
+     */
+    public long total() {
+        checkOpen();
+        List<CompletableFuture<Long>> totals = Lists.newArrayListWithCapacity(this.shards.length);
+        for (Shard shard : this.shards) {
+            CompletableFuture<Long> total = new CompletableFuture<>();
+            shard.send(s -> {
+                long sum = s.reserved;
+                for (long[] balance : s.balances.values()) {
+                    sum += balance[0];
+                }
+                total.complete(sum);
+            });
+            totals.add(total);
+        }
+        long total = 0L;
+        for (CompletableFuture<Long> shardTotal : totals) {
+            total += shardTotal.join();
+        }
+        return total;
+    }
+
+    /**
+     * Stops the shards once they applied everything sent so far, including the later phases of transfers. A call
+     * racing with the first close may still be accepted and never complete.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.isClosed)
+            return;
+        this.isClosed = true;
+        for (int i = 0; i < HOPS; i++) {
+            awaitApplied();
+        }
+        for (Shard shard : this.shards) {
+            shard.send(s -> s.isRunning = false);
+        }
+        for (Shard shard : this.shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until every shard applied the messages sent to it before, one hop of the transfers in flight.
+     */
+    private void awaitApplied() {
+        List<CompletableFuture<Void>> applied = Lists.newArrayListWithCapacity(this.shards.length);
+        for (Shard shard : this.shards) {
+            CompletableFuture<Void> marker = new CompletableFuture<>();
+            shard.send(s -> marker.complete(null));
+            applied.add(marker);
+        }
+        CompletableFuture.allOf(applied.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private void checkOpen() {
+        checkState(!this.isClosed, "ledger is closed");
+    }
+
+    private Shard shardOf(long account) {
+        return this.shards[(int) Math.floorMod(account, (long) this.shards.length)];
+    }
+
+    private static IllegalArgumentException unknown(long account) {
+        return new IllegalArgumentException("unknown account " + account);
+    }
+
+    @FunctionalInterface
+    private interface Message {
+        void apply(Shard shard);
+    }
+
+    private static final class Shard implements Runnable {
+        private final MpscQueue<Message> queue = new MpscQueue<>();
+        private final Thread thread;
+        private volatile boolean isParked;
+        // owned by the shard thread
+        private final Map<Long, long[]> balances = Maps.newHashMap();
+        private long reserved;
+        private boolean isRunning = true;
+
+        private Shard(int index) {
+            this.thread = new Thread(this, "ledger-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private void send(Message message) {
+            this.queue.offer(message);
+            if (this.isParked)
+                LockSupport.unpark(this.thread);
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (this.isRunning) {
+                Message message = this.queue.poll();
+                if (message != null) {
+                    idle = 0;
+                    message.apply(this);
+                } else if (++idle < SPINS) {
+                    Thread.yield();
+                } else {
+                    // a sender links its message before it reads isParked, one of both sees the other
+                    this.isParked = true;
+                    if (this.queue.isEmpty())
+                        LockSupport.park(this);
+                    this.isParked = false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package sample.guava.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of random transfers among {@value #ACCOUNTS} accounts of a {@link ShardedLedger}, by number of shards.
+ * Every invocation sends {@value #WINDOW} transfers before it waits for them, so that the shards are kept busy, most
+ * transfers cross shards. Each shard is a thread, throughput can only grow with the shards up to the number of cores
+ * minus the submitting threads. {@link TransferBenchmark} measures the locking {@link TransferEngine}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ShardedLedgerBenchmark {
+    private static final int ACCOUNTS = 10_000;
+    private static final int WINDOW = 256;
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    private int shards;
+
+    private ShardedLedger ledger;
+
+    @Setup
+    public void setUp() {
+        ledger = ShardedLedger.create(shards);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            ledger.open(i, Long.MAX_VALUE / 2 / ACCOUNTS);
+        }
+        ledger.total();
+    }
+
+    @TearDown
+    public void tearDown() {
+        ledger.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOW)
+    public void transfers() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        CompletableFuture<?>[] window = new CompletableFuture<?>[WINDOW];
+        for (int i = 0; i < WINDOW; i++) {
+            int from = random.nextInt(ACCOUNTS);
+            int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            window[i] = ledger.transfer(from, to, 1L);
+        }
+        CompletableFuture.allOf(window).join();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ShardedLedgerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
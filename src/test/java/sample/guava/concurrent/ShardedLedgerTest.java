@@ -0,0 +1,113 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShardedLedgerTest {
+    private final ShardedLedger ledger = ShardedLedger.create(4);
+
+    @After
+    public void tearDown() {
+        ledger.close();
+    }
+
+    @Test
+    public void conservesMoney() throws Exception {
+        int accounts = 100;
+        for (int i = 0; i < accounts; i++) {
+            ledger.open(i, 1000L).join();
+        }
+        AtomicInteger transferred = new AtomicInteger();
+        AtomicInteger insufficient = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = Lists.newArrayList();
+        for (int t = 0; t < 8; t++) {
+            futures.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<CompletableFuture<Void>> transfers = Lists.newArrayList();
+                for (int i = 0; i < 10_000; i++) {
+                    int from = random.nextInt(accounts);
+                    int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+                    transfers.add(ledger.transfer(from, to, 1 + random.nextInt(500)).handle((nothing, failure) -> {
+                        if (failure == null) {
+                            transferred.incrementAndGet();
+                        } else if (failure instanceof InsufficientFundsException) {
+                            insufficient.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                    if (i % 1000 == 0) {
+                        // money in flight is still counted
+                        assertThat(ledger.total()).isGreaterThanOrEqualTo(accounts * 1000L);
+                    }
+                }
+                CompletableFuture.allOf(transfers.toArray(new CompletableFuture[0])).join();
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        assertThat(transferred.get() + insufficient.get()).isEqualTo(80_000);
+        assertThat(transferred.get()).isPositive();
+        assertThat(ledger.total()).isEqualTo(accounts * 1000L);
+        long sum = 0L;
+        for (int i = 0; i < accounts; i++) {
+            long balance = ledger.balance(i).join();
+            assertThat(balance).isNotNegative();
+            sum += balance;
+        }
+        assertThat(sum).isEqualTo(accounts * 1000L);
+    }
+
+    @Test
+    public void abortsOnUnknownTargetAndInsufficientFunds() {
+        ledger.open(1, 10L).join();
+        ledger.open(2, 0L).join();
+        // 1 and 5 live on the same shard, 1 and 6 do not
+        assertThatThrownBy(() -> ledger.transfer(1, 6, 5L).join())
+                .isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ledger.transfer(1, 5, 5L).join())
+                .isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ledger.transfer(2, 1, 1L).join())
+                .isInstanceOf(CompletionException.class).hasCauseInstanceOf(InsufficientFundsException.class);
+        assertThatThrownBy(() -> ledger.open(1, 0L).join())
+                .isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(ledger.balance(1).join()).isEqualTo(10L);
+        assertThat(ledger.total()).isEqualTo(10L);
+
+        ledger.transfer(1, 2, 10L).join();
+        assertThat(ledger.balance(1).join()).isZero();
+        assertThat(ledger.balance(2).join()).isEqualTo(10L);
+    }
+
+    @Test
+    public void closeCompletesTransfersInFlightThenFailsFast() {
+        ledger.open(1, 10L).join();
+        ledger.open(2, 0L).join();
+        // across shards, credit and commit are sent while close waits
+        CompletableFuture<Void> transferred = ledger.transfer(1, 2, 10L);
+        ledger.close();
+        assertThat(transferred.isDone()).isTrue();
+        transferred.join();
+        assertThatThrownBy(() -> ledger.open(3, 0L)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> ledger.balance(1)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> ledger.transfer(2, 1, 1L)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(ledger::total).isInstanceOf(IllegalStateException.class);
+    }
+}
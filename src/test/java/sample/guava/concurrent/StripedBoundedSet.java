@@ -0,0 +1,247 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A concurrent set bounded like {@link BoundedSet}: {@code add} waits for a permit while the set is full. Instead of
+ * copying an array on every write, elements are spread over hash set stripes, each guarded by a lock of a
+ * {@link Striped}, so add, remove and contains are O(1) and only contend for the same stripe.
+ * <p>
+ * {@link #addAll(Collection)} and {@link #removeAll(Collection)} are atomic: they lock every stripe involved, in
+ * stripe order to rule out deadlocks, so other threads see either none or all of the change.
+ */
+public class StripedBoundedSet<E> extends AbstractSet<E> {
+    private final int permits;
+    private final Semaphore semaphore;
+    private final Striped<Lock> locks;
+    private final Set<E>[] stripes;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public StripedBoundedSet(int permits) {
+        this(permits, 16);
+    }
+
+    @SuppressWarnings("unchecked")
+    public StripedBoundedSet(int permits, int stripes) {
+        checkArgument(permits > 0, "permits must be positive");
+        this.permits = permits;
+        this.semaphore = new Semaphore(permits);
+        this.locks = Striped.lock(stripes);
+        this.stripes = new Set[this.locks.size()];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = Sets.newHashSet();
+        }
+    }
+
+    @Override
+    public boolean add(E element) {
+        try {
+            this.semaphore.acquire();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        boolean isAdded = false;
+        int stripe = stripeOf(element);
+        Lock lock = this.locks.getAt(stripe);
+        lock.lock();
+        try {
+            isAdded = this.stripes[stripe].add(element);
+            if (isAdded)
+                this.size.incrementAndGet();
+            return isAdded;
+        } finally {
+            lock.unlock();
+            if (!isAdded)
+                this.semaphore.release();
+        }
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        int stripe = stripeOf(object);
+        Lock lock = this.locks.getAt(stripe);
+        lock.lock();
+        try {
+            boolean isRemoved = this.stripes[stripe].remove(object);
+            if (isRemoved) {
+                this.size.decrementAndGet();
+                this.semaphore.release();
+            }
+            return isRemoved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        int stripe = stripeOf(object);
+        Lock lock = this.locks.getAt(stripe);
+        lock.lock();
+        try {
+            return this.stripes[stripe].contains(object);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds all elements or none. Takes a permit for every element not present yet, waiting until enough permits are
+     * available at once.
+     *
+     * @throws IllegalArgumentException if there are more distinct elements than permits, they could never fit
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> collection) {
+        Set<E> elements = ImmutableSet.copyOf(collection);
+        checkArgument(elements.size() <= this.permits, "%s elements can never fit in %s permits", elements.size(), this.permits);
+        while (true) {
+            int missing = 0;
+            List<Lock> locked = lock(elements);
+            try {
+                for (E element : elements) {
+                    if (!this.stripes[stripeOf(element)].contains(element))
+                        missing++;
+                }
+                if (this.semaphore.tryAcquire(missing)) {
+                    for (E element : elements) {
+                        this.stripes[stripeOf(element)].add(element);
+                    }
+                    this.size.addAndGet(missing);
+                    return missing > 0;
+                }
+            } finally {
+                unlock(locked);
+            }
+            // wait without holding a stripe, removers need them to hand permits back
+            try {
+                this.semaphore.acquire(missing);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            this.semaphore.release(missing);
+        }
+    }
+
+    /**
+     * Removes all elements at once.
+     */
+    @Override
+    public boolean removeAll(Collection<?> collection) {
+        Set<?> elements = ImmutableSet.copyOf(collection);
+        int removed = 0;
+        List<Lock> locked = lock(elements);
+        try {
+            for (Object element : elements) {
+                if (this.stripes[stripeOf(element)].remove(element))
+                    removed++;
+            }
+            this.size.addAndGet(-removed);
+            return removed > 0;
+        } finally {
+            unlock(locked);
+            this.semaphore.release(removed);
+        }
+    }
+
+    @Override
+    public void clear() {
+        int removed = 0;
+        for (int i = 0; i < this.stripes.length; i++) {
+            Lock lock = this.locks.getAt(i);
+            lock.lock();
+            try {
+                removed += this.stripes[i].size();
+                this.stripes[i].clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+        this.size.addAndGet(-removed);
+        this.semaphore.release(removed);
+    }
+
+    @Override
+    public int size() {
+        return this.size.get();
+    }
+
+    /**
+     * @return an iterator over copies of the stripes, each taken under its own lock
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<Iterator<E>> copies = Lists.newArrayListWithCapacity(this.stripes.length);
+        for (int i = 0; i < this.stripes.length; i++) {
+            Lock lock = this.locks.getAt(i);
+            lock.lock();
+            try {
+                copies.add(ImmutableSet.copyOf(this.stripes[i]).iterator());
+            } finally {
+                lock.unlock();
+            }
+        }
+        Iterator<E> iterator = Iterators.concat(copies.iterator());
+        return new Iterator<E>() {
+            private E last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next() {
+                this.last = iterator.next();
+                return this.last;
+            }
+
+            @Override
+            public void remove() {
+                StripedBoundedSet.this.remove(this.last);
+            }
+        };
+    }
+
+    private List<Lock> lock(Collection<?> elements) {
+        SortedSet<Integer> involved = Sets.newTreeSet();
+        for (Object element : elements) {
+            involved.add(stripeOf(element));
+        }
+        List<Lock> locked = Lists.newArrayListWithCapacity(involved.size());
+        for (int stripe : involved) {
+            Lock lock = this.locks.getAt(stripe);
+            lock.lock();
+            locked.add(lock);
+        }
+        return locked;
+    }
+
+    private static void unlock(List<Lock> locked) {
+        for (Lock lock : Lists.reverse(locked)) {
+            lock.unlock();
+        }
+    }
+
+    private int stripeOf(Object element) {
+        int hash = element == null ? 0 : element.hashCode();
+        // spread the high bits, like HashMap does
+        return (hash ^ (hash >>> 16)) & (this.stripes.length - 1);
+    }
+}
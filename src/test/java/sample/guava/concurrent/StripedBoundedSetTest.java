@@ -0,0 +1,59 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StripedBoundedSetTest {
+
+    @Test
+    public void addWaitsForPermit() throws Exception {
+        StripedBoundedSet<String> set = new StripedBoundedSet<>(2);
+        assertThat(set.add("apple")).isTrue();
+        assertThat(set.add("apple")).isFalse();
+        assertThat(set.add("cat")).isTrue();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<Boolean> adding = pool.submit(() -> set.add("dog"));
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat(adding.isDone()).isFalse();
+        assertThat(set.remove("apple")).isTrue();
+        assertThat(adding.get(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(set).containsOnly("cat", "dog");
+        pool.shutdown();
+    }
+
+    @Test
+    public void bulkOperations() {
+        StripedBoundedSet<Integer> set = new StripedBoundedSet<>(5, 4);
+        assertThat(set.addAll(ImmutableList.of(1, 2, 3, 3))).isTrue();
+        // permits of elements already present are handed back
+        assertThat(set.addAll(ImmutableList.of(3, 4, 5))).isTrue();
+        assertThat(set).hasSize(5).contains(1, 2, 3, 4, 5);
+        assertThatThrownBy(() -> set.addAll(ImmutableList.of(1, 2, 3, 4, 5, 6))).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(set.removeAll(ImmutableList.of(1, 2, 9))).isTrue();
+        assertThat(set).hasSize(3);
+        assertThat(set.add(6)).isTrue();
+        assertThat(set.add(7)).isTrue();
+        set.clear();
+        assertThat(set).isEmpty();
+        assertThat(set.addAll(ImmutableList.of(1, 2, 3, 4, 5))).isTrue();
+    }
+
+    @Test
+    public void iteratorRemove() {
+        StripedBoundedSet<Integer> set = new StripedBoundedSet<>(100);
+        for (int i = 0; i < 100; i++) {
+            set.add(i);
+        }
+        set.removeIf(i -> i % 2 == 0);
+        assertThat(set).hasSize(50).doesNotContain(0, 2, 98);
+    }
+}
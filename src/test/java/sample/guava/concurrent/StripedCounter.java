@@ -0,0 +1,163 @@
+package sample.guava.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over cells like {@link java.util.concurrent.atomic.LongAdder}, so that threads adding
+ * concurrently rarely CAS the same cache line, which in addition takes consistent snapshots and resets.
+ * <p>
+ * Every cell pairs its value with a version that is odd while a thread updates the cell. An update claims the cell
+ * by CASing the version to odd, moving to the next cell if another thread holds it. {@link #sum()} reads all cells
+ * twice and retries until no version changed in between, so the sum is one the counter really had at some instant,
+ * which {@link java.util.concurrent.atomic.LongAdder#sum()} does not promise. {@link #sumThenReset()} claims every
+ * cell, so no update is lost or counted twice.
+ */
+public final class StripedCounter {
+    /**
+     * Longs between two cells, 128 bytes keeps every cell on its own cache lines, including the adjacent line
+     * prefetcher.
+     */
+    private static final int STRIDE = 16;
+    private static final int VERSION = 0;
+    private static final int VALUE = 1;
+    /**
+     * Optimistic attempts of {@link #sum()} before it claims every cell instead.
+     */
+    private static final int OPTIMISTIC_SUMS = 8;
+
+    private final int mask;
+    private final AtomicLongArray cells;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param cells rounded up to a power of two
+     */
+    public StripedCounter(int cells) {
+        int count = cells <= 1 ? 1 : Integer.highestOneBit(cells - 1) << 1;
+        this.mask = count - 1;
+        this.cells = new AtomicLongArray(count * STRIDE);
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void decrement() {
+        add(-1L);
+    }
+
+    public void add(long x) {
+        int cell = (int) mix(Thread.currentThread().getId()) & this.mask;
+        for (int probes = 1; ; probes++) {
+            int base = cell * STRIDE;
+            long version = this.cells.get(base + VERSION);
+            if ((version & 1L) == 0L && this.cells.compareAndSet(base + VERSION, version, version + 1L)) {
+                this.cells.lazySet(base + VALUE, this.cells.get(base + VALUE) + x);
+                this.cells.set(base + VERSION, version + 2L);
+                return;
+            }
+            cell = (cell + 1) & this.mask;
+            // every cell is held, most likely by a snapshot, let it finish
+            if ((probes & this.mask) == 0)
+                Thread.yield();
+        }
+    }
+
+    /**
+     * @return a sum the counter had at one instant between the call and its return
+     */
+    public long sum() {
+        int cellCount = this.mask + 1;
+        for (int attempt = 0; attempt < OPTIMISTIC_SUMS; attempt++) {
+            long sum = 0L;
+            long versions = 0L;
+            boolean isUpdating = false;
+            for (int i = 0; i < cellCount && !isUpdating; i++) {
+                long version = this.cells.get(i * STRIDE + VERSION);
+                isUpdating = (version & 1L) != 0L;
+                versions += version;
+                sum += this.cells.get(i * STRIDE + VALUE);
+            }
+            // versions never decrease, the same total means no cell changed
+            if (!isUpdating && versions == sumOfVersions())
+                return sum;
+        }
+        claimAll();
+        try {
+            return collect(false);
+        } finally {
+            releaseAll();
+        }
+    }
+
+    /**
+     * Resets the counter to zero and returns what it counted, atomically.
+     */
+    public long sumThenReset() {
+        claimAll();
+        try {
+            return collect(true);
+        } finally {
+            releaseAll();
+        }
+    }
+
+    public void reset() {
+        sumThenReset();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    private long sumOfVersions() {
+        long versions = 0L;
+        for (int i = 0; i <= this.mask; i++) {
+            versions += this.cells.get(i * STRIDE + VERSION);
+        }
+        return versions;
+    }
+
+    private long collect(boolean isReset) {
+        long sum = 0L;
+        for (int i = 0; i <= this.mask; i++) {
+            sum += this.cells.get(i * STRIDE + VALUE);
+            if (isReset)
+                this.cells.lazySet(i * STRIDE + VALUE, 0L);
+        }
+        return sum;
+    }
+
+    /**
+     * Claims the cells in index order, concurrent snapshots therefore never hold cells the other waits for.
+     */
+    private void claimAll() {
+        for (int i = 0; i <= this.mask; i++) {
+            int index = i * STRIDE + VERSION;
+            while (true) {
+                long version = this.cells.get(index);
+                if ((version & 1L) == 0L && this.cells.compareAndSet(index, version, version + 1L))
+                    break;
+                Thread.yield();
+            }
+        }
+    }
+
+    private void releaseAll() {
+        for (int i = 0; i <= this.mask; i++) {
+            int index = i * STRIDE + VERSION;
+            this.cells.set(index, this.cells.get(index) + 1L);
+        }
+    }
+
+    static long mix(long id) {
+        // the finalizer of SplittableRandom, consecutive thread ids land on distant cells
+        long z = (id ^ (id >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,70 @@
+package sample.guava.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of a counter every thread increments, the single {@link AtomicLong} {@link DeadLockAvoidance} and
+ * {@link TimingThreadPoolExecutor} used to share against {@link LongAdder} and {@link StripedCounter}. Run
+ * {@link #main(String[])} to scale from 1 to 64 threads, the {@code sum} benchmark shows what a consistent
+ * snapshot costs while the other threads keep incrementing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StripedCounterBenchmark {
+    private final AtomicLong atomic = new AtomicLong();
+    private final LongAdder adder = new LongAdder();
+    private final StripedCounter striped = new StripedCounter();
+
+    @Benchmark
+    public long atomicLong() {
+        return atomic.incrementAndGet();
+    }
+
+    @Benchmark
+    public void longAdder() {
+        adder.increment();
+    }
+
+    @Benchmark
+    public void stripedCounter() {
+        striped.increment();
+    }
+
+    @Benchmark
+    @Group("sum")
+    @GroupThreads(3)
+    public void stripedIncrement() {
+        striped.increment();
+    }
+
+    @Benchmark
+    @Group("sum")
+    public long stripedSum() {
+        return striped.sum();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 2, 4, 8, 16, 32, 64}) {
+            Options options = new OptionsBuilder()
+                    .include(StripedCounterBenchmark.class.getSimpleName() + "\\.(atomicLong|longAdder|stripedCounter)")
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+        new Runner(new OptionsBuilder()
+                .include(StripedCounterBenchmark.class.getSimpleName() + "\\.sum")
+                .build()).run();
+    }
+}
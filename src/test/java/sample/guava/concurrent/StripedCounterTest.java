@@ -0,0 +1,82 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StripedCounterTest {
+
+    @Test
+    public void addAndReset() {
+        StripedCounter counter = new StripedCounter(3);
+        counter.increment();
+        counter.add(10L);
+        counter.decrement();
+        assertThat(counter.sum()).isEqualTo(10L);
+        assertThat(counter.toString()).isEqualTo("10");
+        assertThat(counter.sumThenReset()).isEqualTo(10L);
+        assertThat(counter.sum()).isZero();
+    }
+
+    @Test
+    public void noUpdateLostAcrossResets() throws Exception {
+        StripedCounter counter = new StripedCounter(4);
+        int threads = 4;
+        int adds = 100_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = Lists.newArrayList();
+        for (int i = 0; i < threads; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int j = 0; j < adds; j++) {
+                    counter.increment();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        long reset = 0L;
+        while (!futures.stream().allMatch(Future::isDone)) {
+            reset += counter.sumThenReset();
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(reset + counter.sum()).isEqualTo((long) threads * adds);
+    }
+
+    @Test
+    public void sumIsConsistent() throws Exception {
+        // every writer adds one and takes it back, at any instant the sum is between 0 and the number of writers
+        StripedCounter counter = new StripedCounter(8);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CountDownLatch stop = new CountDownLatch(1);
+        List<Future<?>> futures = Lists.newArrayList();
+        for (int i = 0; i < 2; i++) {
+            futures.add(pool.submit(() -> {
+                while (stop.getCount() > 0) {
+                    counter.add(1L);
+                    counter.add(-1L);
+                }
+                return null;
+            }));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(counter.sum()).isBetween(0L, 2L);
+        }
+        stop.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        assertThat(counter.sum()).isZero();
+    }
+}
@@ -0,0 +1,338 @@
+package sample.guava.concurrent;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A DAG of tasks, like the activity network {@link CountDownLatchTest} wires with latches, that submits a task only
+ * once all its predecessors completed, so no thread ever waits for a predecessor. The task completing the last
+ * predecessor forks its successor onto its own work-stealing queue of the {@link ForkJoinPool}.
+ * <p>
+ * {@link #plan()} computes the critical path from the estimated durations, {@link #execute(ForkJoinPool)} from the
+ * measured ones. Nodes are kept in arrays indexed in insertion order, graphs of 100k nodes take a few megabytes.
+ */
+public final class TaskGraph<K> {
+    private final ImmutableList<K> keys;
+    private final ImmutableMap<K, Integer> indexes;
+    private final long[] estimates;
+    private final Runnable[] tasks;
+    private final int[][] successors;
+    private final int[] predecessorCounts;
+    private final int[] order;
+
+    private TaskGraph(Builder<K> builder) {
+        int size = builder.nodes.size();
+        this.keys = ImmutableList.copyOf(builder.nodes.keySet());
+        ImmutableMap.Builder<K, Integer> indexes = ImmutableMap.builder();
+        for (int i = 0; i < size; i++) {
+            indexes.put(this.keys.get(i), i);
+        }
+        this.indexes = indexes.build();
+        this.estimates = new long[size];
+        this.tasks = new Runnable[size];
+        this.predecessorCounts = new int[size];
+        int[] successorCounts = new int[size];
+        for (Builder.Node<K> node : builder.nodes.values()) {
+            for (K predecessor : node.predecessors) {
+                checkArgument(this.indexes.containsKey(predecessor), "%s depends on unknown %s", node.key, predecessor);
+                successorCounts[this.indexes.get(predecessor)]++;
+            }
+        }
+        this.successors = new int[size][];
+        for (int i = 0; i < size; i++) {
+            this.successors[i] = new int[successorCounts[i]];
+        }
+        int[] filled = new int[size];
+        for (Builder.Node<K> node : builder.nodes.values()) {
+            int index = this.indexes.get(node.key);
+            this.estimates[index] = node.estimate;
+            this.tasks[index] = node.task;
+            this.predecessorCounts[index] = node.predecessors.size();
+            for (K predecessor : node.predecessors) {
+                int from = this.indexes.get(predecessor);
+                this.successors[from][filled[from]++] = index;
+            }
+        }
+        this.order = topologicalOrder();
+    }
+
+    public static <K> Builder<K> builder() {
+        return new Builder<>();
+    }
+
+    public int size() {
+        return this.keys.size();
+    }
+
+    /**
+     * @return the schedule of the estimated durations
+     */
+    public Plan<K> plan() {
+        return new Plan<>(this, this.estimates);
+    }
+
+    /**
+     * Runs every task once all its predecessors completed. A failing task fails the future, tasks not started yet
+     * are skipped.
+     *
+     * @return the schedule of the measured durations, in nanoseconds
+     */
+    public CompletableFuture<Plan<K>> execute(ForkJoinPool pool) {
+        checkNotNull(pool, "pool");
+        Execution execution = new Execution(pool);
+        if (size() == 0) {
+            execution.future.complete(new Plan<>(this, new long[0]));
+        }
+        for (int i = 0; i < size(); i++) {
+            if (this.predecessorCounts[i] == 0)
+                execution.submit(i);
+        }
+        return execution.future;
+    }
+
+    /**
+     * Kahn's algorithm.
+     *
+     * @throws IllegalArgumentException if the graph has a cycle
+     */
+    private int[] topologicalOrder() {
+        int[] pending = this.predecessorCounts.clone();
+        // the sorted prefix doubles as the queue of nodes whose predecessors are all sorted
+        int[] sorted = new int[size()];
+        int sortedCount = 0;
+        for (int i = 0; i < pending.length; i++) {
+            if (pending[i] == 0)
+                sorted[sortedCount++] = i;
+        }
+        for (int head = 0; head < sortedCount; head++) {
+            for (int successor : this.successors[sorted[head]]) {
+                if (--pending[successor] == 0)
+                    sorted[sortedCount++] = successor;
+            }
+        }
+        if (sortedCount < sorted.length) {
+            List<K> cyclic = Lists.newArrayList();
+            for (int i = 0; i < pending.length; i++) {
+                if (pending[i] > 0)
+                    cyclic.add(this.keys.get(i));
+            }
+            throw new IllegalArgumentException("cycle among " + cyclic);
+        }
+        return sorted;
+    }
+
+    private final class Execution {
+        private final ForkJoinPool pool;
+        private final AtomicIntegerArray pending = new AtomicIntegerArray(predecessorCounts);
+        private final AtomicInteger remaining = new AtomicInteger(size());
+        private final long[] durations = new long[size()];
+        private final CompletableFuture<Plan<K>> future = new CompletableFuture<>();
+
+        private Execution(ForkJoinPool pool) {
+            this.pool = pool;
+        }
+
+        private void submit(int node) {
+            this.pool.execute(() -> run(node));
+        }
+
+        private void run(int node) {
+            if (this.future.isDone())
+                return;
+            long start = System.nanoTime();
+            try {
+                tasks[node].run();
+            } catch (Throwable t) {
+                this.future.completeExceptionally(t);
+                return;
+            }
+            // published to the thread completing the future by the decrement of remaining
+            this.durations[node] = System.nanoTime() - start;
+            for (int successor : successors[node]) {
+                if (this.pending.decrementAndGet(successor) == 0)
+                    submit(successor);
+            }
+            if (this.remaining.decrementAndGet() == 0)
+                this.future.complete(new Plan<>(TaskGraph.this, this.durations));
+        }
+    }
+
+    /**
+     * The critical path method: earliest start and finish of every node in a forward pass, latest start and finish
+     * that do not delay the whole graph in a backward pass, slack is the difference.
+     */
+    public static final class Plan<K> {
+        private final TaskGraph<K> graph;
+        private final long[] earliestStart;
+        private final long[] latestStart;
+        private final long[] durations;
+        private final long length;
+
+        private Plan(TaskGraph<K> graph, long[] durations) {
+            int size = graph.size();
+            this.graph = graph;
+            this.durations = durations;
+            this.earliestStart = new long[size];
+            this.latestStart = new long[size];
+            long length = 0L;
+            for (int node : graph.order) {
+                long finish = this.earliestStart[node] + durations[node];
+                length = Math.max(length, finish);
+                for (int successor : graph.successors[node]) {
+                    this.earliestStart[successor] = Math.max(this.earliestStart[successor], finish);
+                }
+            }
+            this.length = length;
+            for (int i = size - 1; i >= 0; i--) {
+                int node = graph.order[i];
+                long latestFinish = length;
+                for (int successor : graph.successors[node]) {
+                    latestFinish = Math.min(latestFinish, this.latestStart[successor]);
+                }
+                this.latestStart[node] = latestFinish - durations[node];
+            }
+        }
+
+        /**
+         * @return the time the whole graph takes with unlimited threads
+         */
+        public long length() {
+            return this.length;
+        }
+
+        public long duration(K key) {
+            return this.durations[indexOf(key)];
+        }
+
+        public long earliestStart(K key) {
+            return this.earliestStart[indexOf(key)];
+        }
+
+        public long latestStart(K key) {
+            return this.latestStart[indexOf(key)];
+        }
+
+        /**
+         * @return how much {@code key} may be delayed without delaying the graph, 0 on the critical path
+         */
+        public long slack(K key) {
+            int node = indexOf(key);
+            return this.latestStart[node] - this.earliestStart[node];
+        }
+
+        /**
+         * @return every slack by key, in insertion order
+         */
+        public Map<K, Long> slacks() {
+            Map<K, Long> slacks = Maps.newLinkedHashMap();
+            for (int i = 0; i < this.graph.size(); i++) {
+                slacks.put(this.graph.keys.get(i), this.latestStart[i] - this.earliestStart[i]);
+            }
+            return slacks;
+        }
+
+        /**
+         * @return a chain of nodes without slack from a root to a leaf, the first one if there are several
+         */
+        public List<K> criticalPath() {
+            List<K> path = Lists.newArrayList();
+            int node = -1;
+            for (int root : this.graph.order) {
+                if (this.graph.predecessorCounts[root] == 0 && isCritical(root)) {
+                    node = root;
+                    break;
+                }
+            }
+            while (node >= 0) {
+                path.add(this.graph.keys.get(node));
+                long finish = this.earliestStart[node] + this.durations[node];
+                int next = -1;
+                for (int successor : this.graph.successors[node]) {
+                    if (isCritical(successor) && this.earliestStart[successor] == finish) {
+                        next = successor;
+                        break;
+                    }
+                }
+                node = next;
+            }
+            return path;
+        }
+
+        private boolean isCritical(int node) {
+            return this.latestStart[node] == this.earliestStart[node];
+        }
+
+        private int indexOf(K key) {
+            Integer index = this.graph.indexes.get(key);
+            checkArgument(index != null, "unknown node %s", key);
+            return index;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("length", this.length)
+                    .add("criticalPath", criticalPath())
+                    .toString();
+        }
+    }
+
+    public static final class Builder<K> {
+        private final Map<K, Node<K>> nodes = Maps.newLinkedHashMap();
+
+        private Builder() {
+        }
+
+        /**
+         * @param estimate    the expected duration, in any unit as long as all nodes use the same
+         * @param predecessors nodes that must complete first, they may be added later
+         */
+        @SafeVarargs
+        public final Builder<K> add(K key, long estimate, Runnable task, K... predecessors) {
+            return add(key, estimate, task, Arrays.asList(predecessors));
+        }
+
+        public Builder<K> add(K key, long estimate, Runnable task, Iterable<? extends K> predecessors) {
+            checkNotNull(key, "key");
+            checkArgument(estimate >= 0L, "estimate must not be negative");
+            checkArgument(!this.nodes.containsKey(key), "%s added twice", key);
+            this.nodes.put(key, new Node<>(key, estimate, checkNotNull(task, "task"), ImmutableList.copyOf(predecessors)));
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if a predecessor is missing or the graph has a cycle
+         */
+        public TaskGraph<K> build() {
+            return new TaskGraph<>(this);
+        }
+
+        private static final class Node<K> {
+            private final K key;
+            private final long estimate;
+            private final Runnable task;
+            private final List<K> predecessors;
+
+            private Node(K key, long estimate, Runnable task, List<K> predecessors) {
+                this.key = key;
+                this.estimate = estimate;
+                this.task = task;
+                this.predecessors = predecessors;
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TaskGraphTest {
+    private static final Runnable NOTHING = () -> {
+    };
+
+    /**
+     * The network of {@link CountDownLatchTest}, see ProjectScheduleNetworkDiagram.png.
+     */
+    private static TaskGraph<String> network(Function<String, Runnable> tasks) {
+        return TaskGraph.<String>builder()
+                .add("E-F", 3000, tasks.apply("E-F"), "B-E", "C-E", "D-E")
+                .add("D-E", 4000, tasks.apply("D-E"), "A-D")
+                .add("C-E", 2000, tasks.apply("C-E"), "B-C", "D-C")
+                .add("B-E", 3000, tasks.apply("B-E"), "A-B")
+                .add("D-C", 1000, tasks.apply("D-C"), "A-D")
+                .add("B-C", 2000, tasks.apply("B-C"), "A-B")
+                .add("A-D", 2000, tasks.apply("A-D"))
+                .add("A-B", 1000, tasks.apply("A-B"))
+                .build();
+    }
+
+    @Test
+    public void criticalPathAndSlack() {
+        TaskGraph.Plan<String> plan = network(key -> NOTHING).plan();
+        assertThat(plan.length()).isEqualTo(9000);
+        assertThat(plan.criticalPath()).containsExactly("A-D", "D-E", "E-F");
+        assertThat(plan.slacks()).isEqualTo(ImmutableMap.builder()
+                .put("E-F", 0L).put("D-E", 0L).put("C-E", 1000L).put("B-E", 2000L)
+                .put("D-C", 1000L).put("B-C", 1000L).put("A-D", 0L).put("A-B", 1000L)
+                .build());
+        assertThat(plan.earliestStart("C-E")).isEqualTo(3000);
+        assertThat(plan.latestStart("C-E")).isEqualTo(4000);
+    }
+
+    @Test
+    public void runsEveryTaskAfterItsPredecessors() throws Exception {
+        List<String> ran = Lists.newCopyOnWriteArrayList();
+        TaskGraph.Plan<String> measured = network(key -> () -> ran.add(key))
+                .execute(ForkJoinPool.commonPool()).get(5, TimeUnit.SECONDS);
+        assertThat(ran).hasSize(8);
+        assertThat(ran.indexOf("E-F")).isEqualTo(7);
+        assertThat(ran.indexOf("C-E")).isGreaterThan(ran.indexOf("B-C")).isGreaterThan(ran.indexOf("A-B"));
+        assertThat(ran.indexOf("C-E")).isGreaterThan(ran.indexOf("D-C")).isGreaterThan(ran.indexOf("A-D"));
+        assertThat(measured.criticalPath()).endsWith("E-F");
+        assertThat(measured.duration("E-F")).isPositive();
+    }
+
+    @Test
+    public void hundredThousandNodesWithoutBlocking() throws Exception {
+        // layers of 1000 nodes, every node depends on two nodes of the layer before
+        int width = 1000;
+        int depth = 100;
+        AtomicInteger ran = new AtomicInteger();
+        TaskGraph.Builder<Integer> builder = TaskGraph.builder();
+        for (int layer = 0; layer < depth; layer++) {
+            for (int i = 0; i < width; i++) {
+                int key = layer * width + i;
+                if (layer == 0) {
+                    builder.add(key, 1, ran::incrementAndGet);
+                } else {
+                    int above = key - width;
+                    builder.add(key, 1, ran::incrementAndGet, above, layer * width - width + (i + 1) % width);
+                }
+            }
+        }
+        TaskGraph<Integer> graph = builder.build();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TaskGraph.Plan<Integer> measured = graph.execute(pool).get(30, TimeUnit.SECONDS);
+            assertThat(ran.get()).isEqualTo(width * depth);
+            assertThat(measured.criticalPath()).hasSize(depth);
+            assertThat(graph.plan().length()).isEqualTo(depth);
+            assertThat(graph.plan().slack(width * depth - 1)).isZero();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void failureSkipsSuccessors() {
+        AtomicInteger ran = new AtomicInteger();
+        TaskGraph<String> graph = TaskGraph.<String>builder()
+                .add("a", 1, () -> {
+                    throw new IllegalStateException("boom");
+                })
+                .add("b", 1, ran::incrementAndGet, "a")
+                .build();
+        assertThatThrownBy(() -> graph.execute(ForkJoinPool.commonPool()).get())
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(ran.get()).isZero();
+    }
+
+    @Test
+    public void rejectsCyclesAndUnknownPredecessors() {
+        assertThatThrownBy(() -> TaskGraph.<String>builder()
+                .add("a", 1, NOTHING, "c")
+                .add("b", 1, NOTHING, "a")
+                .add("c", 1, NOTHING, "b")
+                .add("d", 1, NOTHING)
+                .build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("cycle among [a, b, c]");
+        assertThatThrownBy(() -> TaskGraph.<String>builder().add("a", 1, NOTHING, "x").build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("unknown x");
+    }
+}
@@ -1,23 +1,31 @@
 package sample.guava.concurrent;
 
 import com.google.common.annotations.GwtIncompatible;
-import com.google.common.base.Objects;
 import com.google.common.base.Ticker;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static java.util.concurrent.TimeUnit.*;
 
+/**
+ * A {@link com.google.common.base.Stopwatch} with a separate reading for every thread, so that one instance can
+ * time the tasks of a whole pool.
+ * <p>
+ * All readings of a thread live in a single mutable {@link State} of primitive fields, looked up once per call,
+ * so timing allocates nothing once a thread has its state. Besides start and stop, a running watch can take
+ * {@link #lap(TimeUnit) laps} and time {@link #startNested() nested} sections.
+ */
 public final class ThreadLocalStopWatch {
+    private static final int NESTING = 8;
+
     private final Logger log = LogManager.getLogger(this.getClass().getName());
     private final Ticker ticker;
-    private final ThreadLocal<Boolean> isRunning = new ThreadLocal<>();
-    private final ThreadLocal<Long> elapsedNanos = new ThreadLocal<>();
-    private final ThreadLocal<Long> startTick = new ThreadLocal<>();
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
 
     /**
      * Creates (but does not start) a new StopWatch using
@@ -72,7 +80,7 @@ public final class ThreadLocalStopWatch {
      * {@code start()}.
      */
     public boolean isRunning() {
-        return isRunning.get() == null ? false : isRunning.get();
+        return state.get().running;
     }
 
     /**
@@ -82,9 +90,11 @@ public final class ThreadLocalStopWatch {
      * @throws IllegalStateException if the StopWatch is already running.
      */
     public ThreadLocalStopWatch start() {
-        checkState(!isRunning(), "This StopWatch is already running.");
-        isRunning.set(true);
-        startTick.set(ticker.read());
+        State current = state.get();
+        checkState(!current.running, "This StopWatch is already running.");
+        current.running = true;
+        current.startTick = ticker.read();
+        current.lapTick = current.startTick;
         return this;
     }
 
@@ -97,9 +107,10 @@ public final class ThreadLocalStopWatch {
      */
     public ThreadLocalStopWatch stop() {
         long tick = ticker.read();
-        checkState(isRunning.get(), "This StopWatch is already stopped.");
-        isRunning.set(false);
-        elapsedNanos.set(tick - startTick.get());
+        State current = state.get();
+        checkState(current.running, "This StopWatch is already stopped.");
+        current.running = false;
+        current.elapsedNanos += tick - current.startTick;
         return this;
     }
 
@@ -110,31 +121,59 @@ public final class ThreadLocalStopWatch {
      * @return this {@code StopWatch} instance
      */
     public ThreadLocalStopWatch reset() {
-        elapsedNanos.set(0L);
-        isRunning.set(false);
+        state.get().clear();
         return this;
     }
 
     /**
-     * set all ThreadLocal value objects to null for garbage collection
+     * Returns the time since the previous lap, or since {@link #start()} for the first one, and begins the next lap.
+     *
+     * @throws IllegalStateException if the StopWatch is not running.
      */
-    private void clear() {
-        elapsedNanos.set(null);
-        isRunning.set(null);
-        startTick.set(null);
+    public long lap(TimeUnit desiredUnit) {
+        long tick = ticker.read();
+        State current = state.get();
+        checkState(current.running, "This StopWatch is not running.");
+        long lapNanos = tick - current.lapTick;
+        current.lapTick = tick;
+        return desiredUnit.convert(lapNanos, NANOSECONDS);
     }
 
     /**
-     * @return the elapsed time in desired time unit for current thread if
-     * ticker is set, or zero if the ticker and elapsed value are set to
-     * null
+     * Begins timing a section of the current thread, sections nest and are ended by {@link #stopNested(TimeUnit)}
+     * in reverse order. Independent of {@link #start()} and {@link #stop()}, and kept by {@link #reset()} and
+     * {@link #elapsed(TimeUnit)}, so a task can time its sections while a pool times the whole task.
+     *
+     * @return this {@code StopWatch} instance
      */
-    private long elapsedNanos() {
-        boolean isTickerReady = !Objects.equal(null, isRunning.get()) && !Objects.equal(null, startTick.get())
-                && !Objects.equal(null, elapsedNanos.get());
-        return isTickerReady ? (isRunning.get() ? ticker.read() - startTick.get() + elapsedNanos.get() : elapsedNanos
-                .get()) : 0L;
+    public ThreadLocalStopWatch startNested() {
+        State current = state.get();
+        if (current.depth == current.nested.length) {
+            current.nested = Arrays.copyOf(current.nested, current.depth * 2);
+        }
+        current.nested[current.depth++] = ticker.read();
+        return this;
+    }
+
+    /**
+     * Ends the innermost section begun by {@link #startNested()}.
+     *
+     * @return the time the section took
+     * @throws IllegalStateException if no section was begun.
+     */
+    public long stopNested(TimeUnit desiredUnit) {
+        long tick = ticker.read();
+        State current = state.get();
+        checkState(current.depth > 0, "No nested timing was started.");
+        return desiredUnit.convert(tick - current.nested[--current.depth], NANOSECONDS);
+    }
 
+    /**
+     * @return the elapsed time for current thread, zero once {@link #elapsed(TimeUnit)} has cleared it
+     */
+    private long elapsedNanos() {
+        State current = state.get();
+        return current.running ? ticker.read() - current.startTick + current.elapsedNanos : current.elapsedNanos;
     }
 
     /**
@@ -144,18 +183,16 @@ public final class ThreadLocalStopWatch {
      * <p>
      * Note that the overhead of measurement can be more than a microsecond, so
      * it is generally not useful to specify {@link TimeUnit#NANOSECONDS}
-     * precision here. <b> Note that the ticker and elapsed value will be
-     * destroyed for garbage collection by calling {@link #clear()}<b>
+     * precision here. <b> Note that the reading of the current thread is
+     * cleared by this call, like by {@link #reset()}<b>
      *
-     * @return the elapsed time in desired time unit for current thread if
-     * ticker is set, or zero if the ticker and elapsed value are set to
-     * null
+     * @return the elapsed time in desired time unit for current thread
      */
     public long elapsed(TimeUnit desiredUnit) {
         try {
             return desiredUnit.convert(elapsedNanos(), NANOSECONDS);
         } finally {
-            clear();
+            state.get().clear();
         }
     }
 
@@ -216,4 +253,26 @@ public final class ThreadLocalStopWatch {
                 throw new AssertionError();
         }
     }
+
+    /**
+     * The readings of one thread, only ever touched by that thread.
+     */
+    private static final class State {
+        private boolean running;
+        private long startTick;
+        private long elapsedNanos;
+        private long lapTick;
+        private long[] nested = new long[NESTING];
+        private int depth;
+
+        /**
+         * Clears the main reading, nested sections stay open.
+         */
+        private void clear() {
+            running = false;
+            startTick = 0L;
+            elapsedNanos = 0L;
+            lapTick = 0L;
+        }
+    }
 }
@@ -0,0 +1,113 @@
+package sample.guava.concurrent;
+
+import com.google.common.base.Ticker;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of timing one task the way {@link TimingThreadPoolExecutor} does, reset, start, stop and elapsed, with
+ * {@link ThreadLocalStopWatch} against {@link BoxedStopWatch}, the former implementation keeping three
+ * {@code ThreadLocal}s of boxed values. Run with the gc profiler: {@code gc.alloc.rate.norm} must be 0 for the
+ * {@link ThreadLocalStopWatch} benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ThreadLocalStopWatchBenchmark {
+    private final ThreadLocalStopWatch watch = ThreadLocalStopWatch.createUnstarted();
+    private final BoxedStopWatch boxed = new BoxedStopWatch(Ticker.systemTicker());
+
+    @Benchmark
+    public long boxedThreadLocals() {
+        boxed.reset();
+        boxed.start();
+        boxed.stop();
+        return boxed.elapsed(TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public long primitiveState() {
+        watch.reset();
+        watch.start();
+        watch.stop();
+        return watch.elapsed(TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public long laps() {
+        watch.reset();
+        watch.start();
+        long laps = watch.lap(TimeUnit.NANOSECONDS) + watch.lap(TimeUnit.NANOSECONDS);
+        watch.stop();
+        return laps + watch.elapsed(TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public long nested() {
+        watch.startNested();
+        watch.startNested();
+        long inner = watch.stopNested(TimeUnit.NANOSECONDS);
+        return inner + watch.stopNested(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * What {@link ThreadLocalStopWatch} did before keeping its readings in one state object.
+     */
+    static final class BoxedStopWatch {
+        private final Ticker ticker;
+        private final ThreadLocal<Boolean> isRunning = new ThreadLocal<>();
+        private final ThreadLocal<Long> elapsedNanos = new ThreadLocal<>();
+        private final ThreadLocal<Long> startTick = new ThreadLocal<>();
+
+        BoxedStopWatch(Ticker ticker) {
+            this.ticker = ticker;
+        }
+
+        void start() {
+            isRunning.set(true);
+            startTick.set(ticker.read());
+        }
+
+        void stop() {
+            long tick = ticker.read();
+            isRunning.set(false);
+            elapsedNanos.set(tick - startTick.get());
+        }
+
+        void reset() {
+            elapsedNanos.set(0L);
+            isRunning.set(false);
+        }
+
+        long elapsed(TimeUnit desiredUnit) {
+            try {
+                boolean isTickerReady = isRunning.get() != null && startTick.get() != null && elapsedNanos.get() != null;
+                long nanos = isTickerReady ? (isRunning.get() ? ticker.read() - startTick.get() + elapsedNanos.get()
+                        : elapsedNanos.get()) : 0L;
+                return desiredUnit.convert(nanos, TimeUnit.NANOSECONDS);
+            } finally {
+                elapsedNanos.set(null);
+                isRunning.set(null);
+                startTick.set(null);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ThreadLocalStopWatchBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,84 @@
+package sample.guava.concurrent;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ThreadLocalStopWatchTest {
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+
+    private void advance(long millis) {
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void startStopElapsed() {
+        ThreadLocalStopWatch watch = ThreadLocalStopWatch.createStarted(ticker);
+        advance(5);
+        assertThat(watch.isRunning()).isTrue();
+        watch.stop();
+        advance(5);
+        assertThat(watch.toString()).isEqualTo("5.000 ms");
+        assertThat(watch.elapsed(TimeUnit.MILLISECONDS)).isEqualTo(5);
+        // elapsed clears the reading of the thread
+        assertThat(watch.elapsed(TimeUnit.MILLISECONDS)).isZero();
+        assertThatThrownBy(watch::stop).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void lapsAndNested() {
+        ThreadLocalStopWatch watch = ThreadLocalStopWatch.createStarted(ticker);
+        advance(3);
+        assertThat(watch.lap(TimeUnit.MILLISECONDS)).isEqualTo(3);
+        advance(4);
+        assertThat(watch.lap(TimeUnit.MILLISECONDS)).isEqualTo(4);
+
+        watch.startNested();
+        advance(1);
+        for (int i = 0; i < 10; i++) {
+            watch.startNested();
+        }
+        advance(2);
+        for (int i = 0; i < 10; i++) {
+            assertThat(watch.stopNested(TimeUnit.MILLISECONDS)).isEqualTo(2);
+        }
+        assertThat(watch.stopNested(TimeUnit.MILLISECONDS)).isEqualTo(3);
+        assertThatThrownBy(() -> watch.stopNested(TimeUnit.MILLISECONDS)).isInstanceOf(IllegalStateException.class);
+        assertThat(watch.stop().elapsed(TimeUnit.MILLISECONDS)).isEqualTo(10);
+    }
+
+    @Test
+    public void nestedSectionsSurviveResets() {
+        ThreadLocalStopWatch watch = ThreadLocalStopWatch.createUnstarted(ticker);
+        watch.startNested();
+        // what TimingThreadPoolExecutor does around every task
+        watch.reset().start();
+        advance(2);
+        assertThat(watch.stop().elapsed(TimeUnit.MILLISECONDS)).isEqualTo(2);
+        assertThat(watch.stopNested(TimeUnit.MILLISECONDS)).isEqualTo(2);
+    }
+
+    @Test
+    public void readingPerThread() throws Exception {
+        ThreadLocalStopWatch watch = ThreadLocalStopWatch.createStarted(ticker);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<Boolean> other = pool.submit(watch::isRunning);
+        assertThat(other.get()).isFalse();
+        assertThat(watch.isRunning()).isTrue();
+        pool.shutdown();
+    }
+}
@@ -1,40 +1,106 @@
 package sample.guava.concurrent;
 
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.MapMaker;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import sample.guava.cache.LatencyHistogram;
 
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Records how long every task waited in the queue and how long it ran, in nanoseconds, into {@link LatencyRecorder}s.
+ * Percentiles of both can be read while the pool runs and are logged when it terminates.
+ * <p>
+ * {@link #stats()} adds how saturated the pool is: queue depth, active and idle workers and rejected tasks, a
+ * {@link PoolStatsSampler} reports them periodically.
+ */
 public class TimingThreadPoolExecutor extends ThreadPoolExecutor {
+    private static final long NOT_QUEUED = Long.MIN_VALUE;
+
     private final Logger log = LogManager.getLogger(this.getClass().getName());
-    private final AtomicLong numTasks = new AtomicLong();
-    private final AtomicLong totalTime = new AtomicLong();
+    private final LatencyRecorder queueWaitTimes = new LatencyRecorder();
+    private final LatencyRecorder executionTimes = new LatencyRecorder();
+    // runnables given to execute by identity, entries of tasks that never run go away with the task
+    private final ConcurrentMap<Runnable, Submissions> queuedAt = new MapMaker().weakKeys().makeMap();
+    private final LongAccumulator largestQueueDepth = new LongAccumulator(Math::max, 0L);
     private final ThreadLocalStopWatch watch = ThreadLocalStopWatch.createUnstarted();
 
     public TimingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
                                     BlockingQueue<Runnable> workQueue, RejectedExecutionHandler handler) {
-        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, handler);
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, new CountingHandler(handler));
     }
 
     public TimingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
                                     BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
-        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, new CountingHandler(handler));
     }
 
     public TimingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
                                     BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory) {
-        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, new AbortPolicy());
     }
 
     public TimingThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
                                     BlockingQueue<Runnable> workQueue) {
-        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, new AbortPolicy());
+    }
+
+    /**
+     * A task of {@code submit} carries the time it was queued, a runnable given to this method gets it beside it, so
+     * that the queue, {@link #remove(Runnable)}, the rejection handler and {@link #afterExecute(Runnable, Throwable)}
+     * see the task itself.
+     */
+    @Override
+    public void execute(Runnable command) {
+        checkNotNull(command, "command");
+        if (!(command instanceof TimedTask))
+            remember(command, System.nanoTime());
+        super.execute(command);
+        largestQueueDepth.accumulate(getQueue().size());
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        boolean isRemoved = super.remove(task);
+        if (isRemoved)
+            forget(task, true);
+        return isRemoved;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new TimedTask<>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new TimedTask<>(callable);
+    }
+
+    /**
+     * Keeps counting rejections, {@link #getRejectedExecutionHandler()} returns {@code handler}.
+     */
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        super.setRejectedExecutionHandler(new CountingHandler(handler));
+    }
+
+    @Override
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        return counting().handler;
     }
 
     @Override
     protected void beforeExecute(Thread t, Runnable r) {
         try {
+            long queued = r instanceof TimedTask ? ((TimedTask<?>) r).queuedAt : forget(r, true);
+            if (queued != NOT_QUEUED) {
+                queueWaitTimes.record(System.nanoTime() - queued);
+            }
             watch.reset();
             watch.start();
         } finally {
@@ -46,23 +112,228 @@ public class TimingThreadPoolExecutor extends ThreadPoolExecutor {
     protected void afterExecute(Runnable r, Throwable t) {
         try {
             watch.stop();
-            long taskTime = watch.elapsed(TimeUnit.MILLISECONDS);
-            numTasks.incrementAndGet();
-            totalTime.addAndGet(taskTime);
-            this.log.debug("Task Time: " + taskTime + ", Total Task Time: " + totalTime.get());
+            executionTimes.record(watch.elapsed(TimeUnit.NANOSECONDS));
         } finally {
             super.afterExecute(r, t);
         }
     }
 
+    /**
+     * @return time from {@link #execute(Runnable)} until a worker picked the task up, of all tasks started so far
+     */
+    public LatencyHistogram.Snapshot queueWaitTimes() {
+        return queueWaitTimes.snapshot();
+    }
+
+    /**
+     * @return run time of all tasks completed so far
+     */
+    public LatencyHistogram.Snapshot executionTimes() {
+        return executionTimes.snapshot();
+    }
+
+    /**
+     * @return how saturated the pool is right now, and its counters since it was created
+     */
+    public Stats stats() {
+        int poolSize = getPoolSize();
+        return new Stats(getQueue().size(), largestQueueDepth.get(), getActiveCount(), poolSize,
+                getCompletedTaskCount(), counting().rejections.sum(), queueWaitTimes(), executionTimes());
+    }
+
     @Override
     protected void terminated() {
         try {
-            log.info(String.format(
-                    "Terminated: avg task time: " + totalTime.get() + "/" + numTasks.get() + " == %d ms",
-                    totalTime.get() / numTasks.get()));
+            log.info("Terminated: queue wait {}, execution {}", queueWaitTimes(), executionTimes());
         } finally {
             super.terminated();
         }
     }
+
+    private void remember(Runnable task, long queuedAt) {
+        while (true) {
+            Submissions submissions = this.queuedAt.get(task);
+            if (submissions == null) {
+                Submissions created = new Submissions();
+                submissions = this.queuedAt.putIfAbsent(task, created);
+                if (submissions == null)
+                    submissions = created;
+            }
+            if (submissions.add(queuedAt))
+                return;
+        }
+    }
+
+    /**
+     * @param isOldest the oldest submission of the task, or the latest
+     * @return when it was queued, {@link #NOT_QUEUED} if it was not
+     */
+    private long forget(Runnable task, boolean isOldest) {
+        Submissions submissions = queuedAt.get(task);
+        if (submissions == null)
+            return NOT_QUEUED;
+        return submissions.poll(isOldest, () -> queuedAt.remove(task, submissions));
+    }
+
+    private CountingHandler counting() {
+        return (CountingHandler) super.getRejectedExecutionHandler();
+    }
+
+    public static final class Stats {
+        private final int queueDepth;
+        private final long largestQueueDepth;
+        private final int activeWorkers;
+        private final int poolSize;
+        private final long completedTasks;
+        private final long rejectedTasks;
+        private final LatencyHistogram.Snapshot queueWaitTimes;
+        private final LatencyHistogram.Snapshot executionTimes;
+
+        private Stats(int queueDepth, long largestQueueDepth, int activeWorkers, int poolSize, long completedTasks,
+                      long rejectedTasks, LatencyHistogram.Snapshot queueWaitTimes,
+                      LatencyHistogram.Snapshot executionTimes) {
+            this.queueDepth = queueDepth;
+            this.largestQueueDepth = largestQueueDepth;
+            this.activeWorkers = activeWorkers;
+            this.poolSize = poolSize;
+            this.completedTasks = completedTasks;
+            this.rejectedTasks = rejectedTasks;
+            this.queueWaitTimes = queueWaitTimes;
+            this.executionTimes = executionTimes;
+        }
+
+        /**
+         * @return tasks waiting in the queue when the stats were taken
+         */
+        public int queueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return the deepest the queue was right after a task was submitted
+         */
+        public long largestQueueDepth() {
+            return largestQueueDepth;
+        }
+
+        public int activeWorkers() {
+            return activeWorkers;
+        }
+
+        public int idleWorkers() {
+            return Math.max(0, poolSize - activeWorkers);
+        }
+
+        public int poolSize() {
+            return poolSize;
+        }
+
+        public long completedTasks() {
+            return completedTasks;
+        }
+
+        public long rejectedTasks() {
+            return rejectedTasks;
+        }
+
+        public LatencyHistogram.Snapshot queueWaitTimes() {
+            return queueWaitTimes;
+        }
+
+        public LatencyHistogram.Snapshot executionTimes() {
+            return executionTimes;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("queueDepth", queueDepth)
+                    .add("largestQueueDepth", largestQueueDepth)
+                    .add("activeWorkers", activeWorkers)
+                    .add("idleWorkers", idleWorkers())
+                    .add("completedTasks", completedTasks)
+                    .add("rejectedTasks", rejectedTasks)
+                    .add("queueWait", queueWaitTimes)
+                    .add("execution", executionTimes)
+                    .toString();
+        }
+    }
+
+    private static final class CountingHandler implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler handler;
+        private final StripedCounter rejections = new StripedCounter();
+
+        private CountingHandler(RejectedExecutionHandler handler) {
+            this.handler = checkNotNull(handler, "handler");
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejections.increment();
+            if (executor instanceof TimingThreadPoolExecutor)
+                ((TimingThreadPoolExecutor) executor).forget(r, false);
+            handler.rejectedExecution(r, executor);
+        }
+    }
+
+    /**
+     * A task of {@code submit}, still a {@link Future} to {@link #afterExecute(Runnable, Throwable)}, created right
+     * before it is queued.
+     */
+    private static final class TimedTask<T> extends FutureTask<T> {
+        private final long queuedAt = System.nanoTime();
+
+        private TimedTask(Runnable runnable, T value) {
+            super(runnable, value);
+        }
+
+        private TimedTask(Callable<T> callable) {
+            super(callable);
+        }
+    }
+
+    /**
+     * When the queued instances of one runnable were submitted, oldest first, in a ring of primitive times. Emptied
+     * submissions are removed from the map and refuse further times, the submitting thread then adds new ones.
+     */
+    private static final class Submissions {
+        private long[] times = new long[1];
+        private int head;
+        private int size;
+        private boolean isRemoved;
+
+        private synchronized boolean add(long time) {
+            if (isRemoved)
+                return false;
+            if (size == times.length)
+                grow();
+            times[(head + size) % times.length] = time;
+            size++;
+            return true;
+        }
+
+        private synchronized long poll(boolean isOldest, Runnable remove) {
+            long time = NOT_QUEUED;
+            if (size > 0) {
+                time = times[isOldest ? head : (head + size - 1) % times.length];
+                if (isOldest)
+                    head = (head + 1) % times.length;
+                size--;
+            }
+            if (size == 0 && !isRemoved) {
+                isRemoved = true;
+                remove.run();
+            }
+            return time;
+        }
+
+        private void grow() {
+            long[] grown = new long[times.length * 2];
+            for (int i = 0; i < size; i++) {
+                grown[i] = times[(head + i) % times.length];
+            }
+            times = grown;
+            head = 0;
+        }
+    }
 }
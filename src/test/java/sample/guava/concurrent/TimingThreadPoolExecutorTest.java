@@ -0,0 +1,104 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import sample.guava.cache.LatencyHistogram;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimingThreadPoolExecutorTest {
+
+    @Test
+    public void recordsQueueWaitAndExecutionSeparately() throws Exception {
+        TimingThreadPoolExecutor pool = new TimingThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // the second task waits in the queue while the first one blocks the only worker
+        pool.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        pool.execute(() -> {
+        });
+        started.await();
+        Thread.sleep(20);
+        release.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        LatencyHistogram.Snapshot queueWait = pool.queueWaitTimes();
+        LatencyHistogram.Snapshot execution = pool.executionTimes();
+        assertThat(queueWait.count()).isEqualTo(2);
+        assertThat(execution.count()).isEqualTo(2);
+        assertThat(queueWait.max()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        assertThat(execution.max()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        assertThat(execution.valueAtPercentile(50D)).isLessThan(TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void mergesRecordersOfAllThreads() throws Exception {
+        LatencyRecorder recorder = new LatencyRecorder();
+        recorder.record(1_000L);
+        Thread other = new Thread(() -> recorder.record(1_000_000L));
+        other.start();
+        other.join();
+        LatencyHistogram.Snapshot snapshot = recorder.snapshot();
+        assertThat(snapshot.count()).isEqualTo(2);
+        assertThat(snapshot.valueAtPercentile(50D)).isBetween(1_000L, 1_031L);
+        assertThat(snapshot.max()).isBetween(1_000_000L, 1_031_250L);
+    }
+
+    @Test
+    public void stripesStayFixedForManyThreads() throws Exception {
+        LatencyRecorder recorder = new LatencyRecorder(4);
+        for (int i = 0; i < 100; i++) {
+            Thread thread = new Thread(() -> recorder.record(1_000L));
+            thread.start();
+            thread.join();
+        }
+        assertThat(recorder.snapshot().count()).isEqualTo(100);
+    }
+
+    @Test
+    public void exposesTheSubmittedTasks() throws Exception {
+        List<Runnable> executed = Lists.newCopyOnWriteArrayList();
+        TimingThreadPoolExecutor pool = new TimingThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>()) {
+            @Override
+            protected void afterExecute(Runnable r, Throwable t) {
+                super.afterExecute(r, t);
+                executed.add(r);
+            }
+        };
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocking = pool.submit(() -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+        Runnable queued = () -> {
+        };
+        pool.execute(queued);
+        started.await();
+        assertThat(pool.getQueue()).containsExactly(queued);
+        assertThat(pool.remove(queued)).isTrue();
+        release.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        // the future of submit, so a failed task can be told by r instanceof Future
+        assertThat(executed).containsExactly((Runnable) blocking);
+        assertThat(pool.queueWaitTimes().count()).isEqualTo(1);
+    }
+}
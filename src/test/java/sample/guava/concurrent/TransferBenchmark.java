@@ -0,0 +1,98 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.Lists;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfers of one unit between random accounts, where {@code hotRatio} of them involve the same hot account, with
+ * the {@code tryLock} and sleep loop of {@link Transfer} against the lock ordered {@link TransferEngine}, one
+ * transfer or a batch of {@value #BATCH} per acquisition.
+ * <p>
+ * The {@code failures} counter counts the transfers {@link Transfer} gave up on after its millisecond timeout, the
+ * failure rate is {@code failures / (transfers + failures)}. The engine never gives up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TransferBenchmark {
+    private static final int BATCH = 64;
+
+    @Param({"1000", "10000"})
+    private int accounts;
+
+    @Param({"0.0", "0.5"})
+    private double hotRatio;
+
+    private List<Account> all;
+    private final Transfer transfer = Transfer.getInstance();
+    private final TransferEngine engine = new TransferEngine();
+
+    @Setup
+    public void setUp() {
+        all = Lists.newArrayListWithCapacity(accounts);
+        for (int i = 0; i < accounts; i++) {
+            all.add(new Account(Long.MAX_VALUE / 2));
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long transfers;
+        public long failures;
+    }
+
+    @Benchmark
+    public void tryLockLoop(Outcome outcome) throws Exception {
+        Account[] pair = pair();
+        if (transfer.transfer(pair[0], pair[1], 1L, TimeUnit.MILLISECONDS, 1L)) {
+            outcome.transfers++;
+        } else {
+            outcome.failures++;
+        }
+    }
+
+    @Benchmark
+    public void lockOrdered(Outcome outcome) throws Exception {
+        Account[] pair = pair();
+        engine.transfer(pair[0], pair[1], 1L);
+        outcome.transfers++;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void lockOrderedBatch(Outcome outcome) throws Exception {
+        List<TransferEngine.Request> requests = Lists.newArrayListWithCapacity(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            Account[] pair = pair();
+            requests.add(TransferEngine.Request.of(pair[0], pair[1], 1L));
+        }
+        outcome.transfers += BATCH - engine.transferAll(requests).size();
+    }
+
+    private Account[] pair() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextDouble() < hotRatio ? 0 : random.nextInt(accounts);
+        int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+        return random.nextBoolean() ? new Account[]{all.get(from), all.get(to)} : new Account[]{all.get(to), all.get(from)};
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TransferBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,105 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Transfers between {@link Account}s without the deadlock {@link Transfer} avoids by retrying {@code tryLock}: every
+ * transfer takes the locks of its accounts in the order of their ids, so no two transfers can each hold a lock the
+ * other waits for. Threads block on the fair account locks instead of spinning and sleeping, and never give up.
+ * <p>
+ * {@link #transferAll(Collection)} applies a whole batch under one acquisition of every account involved.
+ */
+final class TransferEngine {
+    private static final Comparator<Account> BY_ID = Comparator.comparingLong(Account::getId);
+
+    public void transfer(Account from, Account to, long amount) throws InsufficientFundsException, InterruptedException {
+        checkArgument(from != to, "transfer from %s to itself", from.getId());
+        checkArgument(amount > 0L, "amount must be positive");
+        Account first = from.getId() < to.getId() ? from : to;
+        Account second = first == from ? to : from;
+        first.getLock().lockInterruptibly();
+        try {
+            second.getLock().lockInterruptibly();
+            try {
+                apply(from, to, amount);
+            } finally {
+                second.getLock().unlock();
+            }
+        } finally {
+            first.getLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the requests in order while holding the locks of all their accounts, one lock acquisition per account
+     * for the whole batch. Requests the source cannot fund at their turn are skipped.
+     *
+     * @return the skipped requests
+     */
+    public List<Request> transferAll(Collection<Request> requests) throws InterruptedException {
+        List<Account> accounts = Lists.newArrayListWithCapacity(requests.size() * 2);
+        for (Request request : requests) {
+            accounts.add(request.from);
+            accounts.add(request.to);
+        }
+        accounts.sort(BY_ID);
+        List<Lock> locked = Lists.newArrayListWithCapacity(accounts.size());
+        try {
+            Account previous = null;
+            for (Account account : accounts) {
+                if (account != previous) {
+                    account.getLock().lockInterruptibly();
+                    locked.add(account.getLock());
+                    previous = account;
+                }
+            }
+            List<Request> skipped = Lists.newArrayList();
+            for (Request request : requests) {
+                try {
+                    apply(request.from, request.to, request.amount);
+                } catch (InsufficientFundsException e) {
+                    skipped.add(request);
+                }
+            }
+            return skipped.isEmpty() ? ImmutableList.of() : skipped;
+        } finally {
+            for (Lock lock : Lists.reverse(locked)) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static void apply(Account from, Account to, long amount) throws InsufficientFundsException {
+        if (from.getBalance() < amount)
+            throw new InsufficientFundsException();
+        from.withdraw(amount);
+        to.deposit(amount);
+    }
+
+    static final class Request {
+        private final Account from;
+        private final Account to;
+        private final long amount;
+
+        private Request(Account from, Account to, long amount) {
+            this.from = checkNotNull(from, "from");
+            this.to = checkNotNull(to, "to");
+            checkArgument(from != to, "transfer from %s to itself", from.getId());
+            checkArgument(amount > 0L, "amount must be positive");
+            this.amount = amount;
+        }
+
+        static Request of(Account from, Account to, long amount) {
+            return new Request(from, to, amount);
+        }
+    }
+}
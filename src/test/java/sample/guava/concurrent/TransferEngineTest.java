@@ -0,0 +1,78 @@
+package sample.guava.concurrent;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TransferEngineTest {
+    private final TransferEngine engine = new TransferEngine();
+
+    @Test
+    public void opposingTransfersNeitherDeadlockNorFail() throws Exception {
+        List<Account> accounts = Lists.newArrayList();
+        for (int i = 0; i < 8; i++) {
+            accounts.add(new Account(1_000_000L));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = Lists.newArrayList();
+        for (int t = 0; t < 8; t++) {
+            futures.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 10_000; i++) {
+                    int from = random.nextInt(accounts.size());
+                    int to = (from + 1 + random.nextInt(accounts.size() - 1)) % accounts.size();
+                    if (i % 100 == 0) {
+                        engine.transferAll(ImmutableList.of(
+                                TransferEngine.Request.of(accounts.get(from), accounts.get(to), 3L),
+                                TransferEngine.Request.of(accounts.get(to), accounts.get(from), 2L)));
+                    } else {
+                        engine.transfer(accounts.get(from), accounts.get(to), 1L);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        assertThat(accounts.stream().mapToLong(Account::getBalance).sum()).isEqualTo(8_000_000L);
+    }
+
+    @Test
+    public void batchSkipsWhatCannotBeFunded() throws Exception {
+        Account a = new Account(10L);
+        Account b = new Account(0L);
+        Account c = new Account(0L);
+        TransferEngine.Request tooMuch = TransferEngine.Request.of(b, c, 5L);
+        List<TransferEngine.Request> skipped = engine.transferAll(ImmutableList.of(
+                tooMuch,
+                TransferEngine.Request.of(a, b, 7L),
+                TransferEngine.Request.of(b, c, 5L),
+                TransferEngine.Request.of(a, c, 4L)));
+        assertThat(skipped).hasSize(2);
+        assertThat(skipped.get(0)).isSameAs(tooMuch);
+        assertThat(a.getBalance()).isEqualTo(3L);
+        assertThat(b.getBalance()).isEqualTo(2L);
+        assertThat(c.getBalance()).isEqualTo(5L);
+    }
+
+    @Test
+    public void rejectsInvalidTransfers() {
+        Account a = new Account(10L);
+        Account b = new Account(0L);
+        assertThatThrownBy(() -> engine.transfer(a, a, 1L)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> engine.transfer(a, b, 0L)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> engine.transfer(b, a, 1L)).isInstanceOf(InsufficientFundsException.class);
+    }
+}